@@ -0,0 +1,133 @@
+package com.kurento.ktool.rom.processor.codegen.function;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import freemarker.template.TemplateModelException;
+
+/**
+ * Translates all the docs of the core, elements and filters kmd files of
+ * Kurento, as the java templates do, with {@link LegacySphinxLinks} and with
+ * {@link SphinxLinks}, both with its cache and without it. Before measuring,
+ * it checks that both translate every doc the same.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar SphinxLinksBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SphinxLinksBenchmark {
+
+	private static final String[] KMD_FILES = {
+			"META-INF/kurento/core.kmd.json",
+			"META-INF/kurento/elements.kmd.json",
+			"META-INF/kurento/filters.kmd.json" };
+
+	private final LegacySphinxLinks legacySphinxLinks = new LegacySphinxLinks();
+	private final SphinxLinks sphinxLinks = new SphinxLinks();
+
+	private List<String> docs;
+	private List<List<String>> arguments;
+
+	@Setup
+	public void setup() throws IOException, TemplateModelException {
+
+		docs = new ArrayList<String>();
+		for (String kmdFile : KMD_FILES) {
+			try (InputStream is = SphinxLinksBenchmark.class.getClassLoader()
+					.getResourceAsStream(kmdFile)) {
+				if (is == null) {
+					throw new IllegalStateException("Kmd file " + kmdFile
+							+ " not found in the classpath");
+				}
+				try (Reader reader = new InputStreamReader(is, "UTF-8")) {
+					addDocs(new JsonParser().parse(reader), docs);
+				}
+			}
+		}
+
+		arguments = new ArrayList<List<String>>();
+		for (String doc : docs) {
+			arguments.add(Collections.singletonList(doc));
+		}
+
+		for (List<String> argument : arguments) {
+			Object expected = legacySphinxLinks.exec(argument);
+			if (!expected.equals(sphinxLinks.translateDoc(argument.get(0)))
+					|| !expected.equals(sphinxLinks.exec(argument))) {
+				throw new IllegalStateException(
+						"Different translations of doc: " + argument.get(0));
+			}
+		}
+	}
+
+	private static void addDocs(JsonElement element, List<String> docs) {
+		if (element.isJsonObject()) {
+			for (Map.Entry<String, JsonElement> entry : ((JsonObject) element)
+					.entrySet()) {
+				JsonElement value = entry.getValue();
+				if (entry.getKey().equals("doc") && value.isJsonPrimitive()) {
+					docs.add(value.getAsString());
+				} else {
+					addDocs(value, docs);
+				}
+			}
+		} else if (element.isJsonArray()) {
+			for (JsonElement item : (JsonArray) element) {
+				addDocs(item, docs);
+			}
+		}
+	}
+
+	@Benchmark
+	public void legacy(Blackhole blackhole) throws TemplateModelException {
+		for (List<String> argument : arguments) {
+			blackhole.consume(legacySphinxLinks.exec(argument));
+		}
+	}
+
+	@Benchmark
+	public void uncached(Blackhole blackhole) {
+		for (String doc : docs) {
+			blackhole.consume(sphinxLinks.translateDoc(doc));
+		}
+	}
+
+	@Benchmark
+	public void cached(Blackhole blackhole) throws TemplateModelException {
+		for (List<String> argument : arguments) {
+			blackhole.consume(sphinxLinks.exec(argument));
+		}
+	}
+}
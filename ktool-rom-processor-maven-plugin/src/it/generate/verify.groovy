@@ -0,0 +1,23 @@
+def generated = [
+	'core/target/generated-sources/kmd/org/kurento/client/MediaObject.java',
+	'core/target/generated-sources/kmd/org/kurento/client/MediaPipeline.java',
+	'core/target/generated-sources/kmd/org/kurento/client/MediaType.java',
+	'core/target/generated-sources/kmd/org/kurento/client/MediaEvent.java',
+	'filter/target/generated-sources/kmd/org/kurento/module/filter/MyFilter.java',
+	'filter/target/generated-sources/kmd/org/kurento/module/filter/MyMode.java',
+]
+
+for (name in generated) {
+	def file = new File(basedir, name)
+	assert file.isFile() : "$name has not been generated"
+}
+
+def myFilter = new File(basedir, generated[4]).text
+assert myFilter.contains('interface MyFilter extends MediaElement')
+
+// No temporary files are left after the generation
+def tempFiles = []
+basedir.eachFileRecurse { if (it.name.endsWith('.tmp')) tempFiles << it }
+assert tempFiles.isEmpty() : "Temporary files left: $tempFiles"
+
+return true
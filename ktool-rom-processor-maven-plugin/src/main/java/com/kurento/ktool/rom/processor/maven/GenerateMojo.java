@@ -0,0 +1,229 @@
+package com.kurento.ktool.rom.processor.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.kurento.ktool.rom.processor.codegen.Error;
+import com.kurento.ktool.rom.processor.codegen.KurentoRomProcessor;
+import com.kurento.ktool.rom.processor.codegen.PathUtils;
+import com.kurento.ktool.rom.processor.codegen.Result;
+
+/**
+ * Generates code from the kmd files of a module, running the processor in
+ * the JVM of the build instead of in a new one.
+ *
+ * Templates and dependency models are cached for the whole build and shared
+ * by all the modules of the reactor, so the kmd files of core, elements,
+ * filters, etc. are loaded once even if many modules depend on them. The
+ * goal can be executed concurrently in parallel builds.
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class GenerateMojo extends AbstractMojo {
+
+	/**
+	 * Kmd files to generate, or directories where they are searched. By
+	 * default, src/main/kmd.
+	 */
+	@Parameter
+	private File[] kmdFiles;
+
+	/**
+	 * Kmd files of the dependencies, or directories where they are searched.
+	 */
+	@Parameter
+	private File[] dependencyKmdFiles;
+
+	/**
+	 * Directory that contains the templates. Either this or
+	 * internalTemplates has to be set.
+	 */
+	@Parameter
+	private File templatesDir;
+
+	/**
+	 * Name of the templates included in the processor (java, js, cpp_server,
+	 * etc.)
+	 */
+	@Parameter
+	private String internalTemplates;
+
+	/**
+	 * Destination directory for generated files. It can also be an archive,
+	 * as in ${project.build.directory}/generated.jar!/
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/kmd", required = true)
+	private File codegenDir;
+
+	/**
+	 * Configuration file of the templates.
+	 */
+	@Parameter
+	private File configFile;
+
+	@Parameter(defaultValue = "true")
+	private boolean overwrite;
+
+	/**
+	 * Deletes the codegen directory before generating files.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean deleteGenDir;
+
+	/**
+	 * Deletes the files of the previous generation that are not generated
+	 * anymore.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean prune;
+
+	/**
+	 * Skips templates whose inputs haven't changed since the previous build.
+	 */
+	@Parameter(defaultValue = "true")
+	private boolean incremental;
+
+	/**
+	 * Number of threads used to render templates.
+	 */
+	@Parameter(defaultValue = "1")
+	private int threads;
+
+	@Parameter(defaultValue = "false")
+	private boolean listGeneratedFiles;
+
+	/**
+	 * Adds the codegen directory as a source directory of the module.
+	 */
+	@Parameter(defaultValue = "true")
+	private boolean addCompileSourceRoot;
+
+	@Parameter(property = "ktool-rom-processor.skip", defaultValue = "false")
+	private boolean skip;
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	@Parameter(defaultValue = "${session}", readonly = true, required = true)
+	private MavenSession session;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		if (skip) {
+			getLog().info("Code generation is skipped");
+			return;
+		}
+
+		if ((templatesDir == null) == (internalTemplates == null)) {
+			throw new MojoExecutionException(
+					"Either templatesDir or internalTemplates has to be set");
+		}
+
+		Result result;
+		try {
+			result = createProcessor().generateCode();
+		} catch (IOException | RuntimeException e) {
+			throw new MojoExecutionException("Error generating code: "
+					+ e.getMessage(), e);
+		}
+
+		if (!result.isSuccess()) {
+			for (Error error : result.getErrors()) {
+				getLog().error(error.getMessage());
+			}
+			throw new MojoFailureException("Code generation failed");
+		}
+
+		if (addCompileSourceRoot && codegenDir.isDirectory()) {
+			project.addCompileSourceRoot(codegenDir.getAbsolutePath());
+		}
+	}
+
+	private KurentoRomProcessor createProcessor() throws IOException,
+			MojoExecutionException {
+
+		KurentoRomProcessor krp = new KurentoRomProcessor();
+		krp.setCache(ProcessorCaches.get(session));
+		krp.setOverwrite(overwrite);
+		krp.setDeleteGenDir(deleteGenDir);
+		krp.setPrune(prune);
+		krp.setIncremental(incremental);
+		krp.setThreads(threads);
+		krp.setListGeneratedFiles(listGeneratedFiles);
+
+		if (templatesDir != null) {
+			krp.setTemplatesDir(templatesDir.toPath());
+		} else {
+			krp.setInternalTemplates(internalTemplates);
+		}
+
+		if (configFile != null) {
+			krp.setConfig(loadConfigFile(configFile));
+		}
+
+		File[] files = kmdFiles;
+		if (files == null) {
+			files = new File[] { new File(project.getBasedir(),
+					"src/main/kmd") };
+		}
+
+		List<Path> kmdPaths = getPaths(files, "*.kmd.json");
+		if (kmdPaths.isEmpty()) {
+			throw new MojoExecutionException("No kmd files found in paths: "
+					+ Arrays.toString(toPathNames(files)));
+		}
+		krp.setKmdFilesToGen(kmdPaths);
+
+		if (dependencyKmdFiles != null) {
+			krp.setDependencyKmdFiles(getPaths(dependencyKmdFiles,
+					"*.kmd.{json,bin}"));
+		}
+
+		krp.setCodeGenDir(codegenDir.toPath());
+
+		return krp;
+	}
+
+	private JsonObject loadConfigFile(File file) throws IOException,
+			MojoExecutionException {
+
+		if (!file.isFile()) {
+			throw new MojoExecutionException("Config file '" + file
+					+ "' does not exist or is not readable");
+		}
+
+		try {
+			return KurentoRomProcessor.loadConfigFile(file.toPath());
+		} catch (JsonIOException e) {
+			throw new MojoExecutionException("Config file '" + file
+					+ "' can not be read", e);
+		}
+	}
+
+	private static List<Path> getPaths(File[] files, String globPattern)
+			throws IOException {
+		return PathUtils.getPaths(toPathNames(files), globPattern);
+	}
+
+	private static String[] toPathNames(File[] files) {
+		String[] pathNames = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			pathNames[i] = files[i].getAbsolutePath();
+		}
+		return pathNames;
+	}
+}
@@ -0,0 +1,38 @@
+package com.kurento.ktool.rom.processor.maven;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+import com.kurento.ktool.rom.processor.codegen.ProcessorCache;
+
+/**
+ * Keeps a {@link ProcessorCache} for each build, shared by all the modules of
+ * the reactor. The classes of the plugin are loaded once for the whole build,
+ * but the session of each module can be a different object (sessions are
+ * cloned in parallel builds), so the build is identified by its execution
+ * request. Caches are discarded when the request is collected, once the
+ * build has finished.
+ */
+final class ProcessorCaches {
+
+	private static final Map<MavenExecutionRequest, ProcessorCache> caches = new WeakHashMap<MavenExecutionRequest, ProcessorCache>();
+
+	private ProcessorCaches() {
+	}
+
+	static synchronized ProcessorCache get(MavenSession session) {
+
+		MavenExecutionRequest request = session.getRequest();
+
+		ProcessorCache cache = caches.get(request);
+		if (cache == null) {
+			cache = new ProcessorCache();
+			caches.put(request, cache);
+		}
+
+		return cache;
+	}
+}
@@ -0,0 +1,405 @@
+package com.kurento.ktool.rom.processor.binary;
+
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.FORMAT_VERSION;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_COMPLEX_TYPE;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_EVENT;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_PRIMITIVE;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_REMOTE_CLASS;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.MAGIC;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.PRIMITIVES;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.kurento.ktool.rom.processor.codegen.KurentoRomProcessorException;
+import com.kurento.ktool.rom.processor.model.Code;
+import com.kurento.ktool.rom.processor.model.ComplexType;
+import com.kurento.ktool.rom.processor.model.ComplexType.TypeFormat;
+import com.kurento.ktool.rom.processor.model.Event;
+import com.kurento.ktool.rom.processor.model.Import;
+import com.kurento.ktool.rom.processor.model.Method;
+import com.kurento.ktool.rom.processor.model.Model;
+import com.kurento.ktool.rom.processor.model.ModelLinker;
+import com.kurento.ktool.rom.processor.model.Param;
+import com.kurento.ktool.rom.processor.model.Property;
+import com.kurento.ktool.rom.processor.model.RemoteClass;
+import com.kurento.ktool.rom.processor.model.Return;
+import com.kurento.ktool.rom.processor.model.Type;
+import com.kurento.ktool.rom.processor.model.TypeRef;
+
+/**
+ * Reads a model and, once its imports are resolved, links its type references
+ * to the types at the stored locations.
+ */
+class BinaryModelReader implements ModelLinker {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static class Link {
+		private final TypeRef typeRef;
+		private final String modelName;
+		private final byte kind;
+		private final int index;
+
+		Link(TypeRef typeRef, String modelName, byte kind, int index) {
+			this.typeRef = typeRef;
+			this.modelName = modelName;
+			this.kind = kind;
+			this.index = index;
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final String source;
+	private final List<Link> links = new ArrayList<Link>();
+
+	private String[] strings;
+
+	BinaryModelReader(ByteBuffer buffer, String source) {
+		this.buffer = buffer;
+		this.source = source;
+	}
+
+	Model readModel() {
+		try {
+			readHeader();
+			return readModelBody();
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new KurentoRomProcessorException("Binary kmd file '"
+					+ source + "' is corrupted", e);
+		}
+	}
+
+	private void readHeader() {
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			throw new KurentoRomProcessorException("File '" + source
+					+ "' is not a binary kmd file");
+		}
+
+		int version = buffer.getInt();
+		if (version != FORMAT_VERSION) {
+			throw new KurentoRomProcessorException("Binary kmd file '"
+					+ source + "' has format version " + version
+					+ " but version " + FORMAT_VERSION
+					+ " is expected. It has to be generated again");
+		}
+
+		strings = new String[buffer.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			int length = buffer.getInt();
+			strings[i] = new String(buffer.array(), buffer.arrayOffset()
+					+ buffer.position(), length, UTF8);
+			buffer.position(buffer.position() + length);
+		}
+	}
+
+	private Model readModelBody() {
+
+		Model model = new Model();
+		model.setName(readString());
+		model.setVersion(readString());
+		model.setKurentoVersion(readString());
+		model.setRepository(readString());
+
+		int numImports = buffer.getInt();
+		List<Import> imports = new ArrayList<Import>(numImports);
+		for (int i = 0; i < numImports; i++) {
+			imports.add(new Import(readString(), readString()));
+		}
+		model.setImports(imports);
+
+		if (readBoolean()) {
+			model.setCode(new Code(readSections(), readSections(), readMap()));
+		}
+
+		int numComplexTypes = buffer.getInt();
+		List<ComplexType> complexTypes = new ArrayList<ComplexType>(
+				numComplexTypes);
+		for (int i = 0; i < numComplexTypes; i++) {
+			String name = readString();
+			String doc = readString();
+			byte typeFormat = buffer.get();
+			TypeRef extendsProp = readTypeRef();
+			List<Property> properties = readProperties();
+			List<String> values = readStrings();
+
+			ComplexType complexType = new ComplexType(name, doc,
+					typeFormat >= 0 ? TypeFormat.values()[typeFormat] : null,
+					properties, values);
+			complexType.setExtends(extendsProp);
+			complexTypes.add(complexType);
+		}
+		model.setComplexTypes(complexTypes);
+
+		int numEvents = buffer.getInt();
+		List<Event> events = new ArrayList<Event>(numEvents);
+		for (int i = 0; i < numEvents; i++) {
+			String name = readString();
+			String doc = readString();
+			TypeRef extendsProp = readTypeRef();
+
+			Event event = new Event(name, doc, readProperties());
+			event.setExtends(extendsProp);
+			events.add(event);
+		}
+		model.setEvents(events);
+
+		int numRemoteClasses = buffer.getInt();
+		List<RemoteClass> remoteClasses = new ArrayList<RemoteClass>(
+				numRemoteClasses);
+		for (int i = 0; i < numRemoteClasses; i++) {
+			String name = readString();
+			String doc = readString();
+			TypeRef extendsProp = readTypeRef();
+			boolean abstractClass = readBoolean();
+			Method constructor = readBoolean() ? readMethod() : null;
+			List<Method> methods = readMethods();
+			List<Property> properties = readProperties();
+			List<TypeRef> eventRefs = readTypeRefs();
+
+			RemoteClass remoteClass = new RemoteClass(name, doc, extendsProp,
+					constructor, methods, properties, eventRefs);
+			remoteClass.setAbstract(abstractClass);
+			remoteClasses.add(remoteClass);
+		}
+		model.setRemoteClasses(remoteClasses);
+
+		model.setLinker(this);
+
+		return model;
+	}
+
+	@Override
+	public void link(Model model) {
+
+		Map<String, Model> models = new HashMap<String, Model>();
+		for (Model dependencyModel : model.getDependencyModels()) {
+			models.put(dependencyModel.getName(), dependencyModel);
+		}
+		models.put(model.getName(), model);
+
+		for (Link link : links) {
+			link.typeRef.setType(findType(model, models, link));
+		}
+		links.clear();
+	}
+
+	private Type findType(Model model, Map<String, Model> models, Link link) {
+
+		String typeName = link.typeRef.getName();
+
+		if (link.kind == KIND_PRIMITIVE) {
+			return PRIMITIVES.get(link.index);
+		}
+
+		Model owner = models.get(link.modelName);
+		if (owner == null) {
+			throw new KurentoRomProcessorException("The type '" + typeName
+					+ "' used in binary model '" + model.getName()
+					+ "' belongs to model '" + link.modelName
+					+ "', that is not imported");
+		}
+
+		List<? extends Type> types;
+		switch (link.kind) {
+		case KIND_REMOTE_CLASS:
+			types = owner.getRemoteClasses();
+			break;
+		case KIND_COMPLEX_TYPE:
+			types = owner.getComplexTypes();
+			break;
+		case KIND_EVENT:
+			types = owner.getEvents();
+			break;
+		default:
+			throw new KurentoRomProcessorException("Binary kmd file '"
+					+ source + "' is corrupted");
+		}
+
+		if (link.index < types.size()) {
+			Type type = types.get(link.index);
+			if (typeName.equals(type.getName())) {
+				return type;
+			}
+		}
+
+		// The imported model has changed since the binary model was written
+		Type type;
+		switch (link.kind) {
+		case KIND_REMOTE_CLASS:
+			type = owner.getRemoteClass(typeName);
+			break;
+		case KIND_COMPLEX_TYPE:
+			type = owner.getType(typeName);
+			break;
+		default:
+			type = owner.getEvent(typeName);
+			break;
+		}
+
+		if (type == null) {
+			throw new KurentoRomProcessorException("The type '" + typeName
+					+ "' used in binary model '" + model.getName()
+					+ "' is not defined in model '" + link.modelName
+					+ "'. The binary model has to be generated again");
+		}
+
+		return type;
+	}
+
+	private List<Method> readMethods() {
+		int size = buffer.getInt();
+		if (size < 0) {
+			return null;
+		}
+		List<Method> methods = new ArrayList<Method>(size);
+		for (int i = 0; i < size; i++) {
+			methods.add(readMethod());
+		}
+		return methods;
+	}
+
+	private Method readMethod() {
+		String name = readString();
+		String doc = readString();
+
+		List<Param> params = null;
+		int numParams = buffer.getInt();
+		if (numParams >= 0) {
+			params = new ArrayList<Param>(numParams);
+			for (int i = 0; i < numParams; i++) {
+				String paramName = readString();
+				String paramDoc = readString();
+				TypeRef type = readTypeRef();
+				boolean optional = readBoolean();
+				JsonElement defaultValue = readJson();
+
+				Param param;
+				if (defaultValue != null) {
+					param = new Param(paramName, paramDoc, type, defaultValue);
+					param.setOptional(optional);
+				} else {
+					param = new Param(paramName, paramDoc, type, optional);
+				}
+				params.add(param);
+			}
+		}
+
+		Return returnProp = null;
+		if (readBoolean()) {
+			TypeRef type = readTypeRef();
+			returnProp = new Return(type, readString());
+		}
+
+		return new Method(name, doc, params, returnProp);
+	}
+
+	private List<Property> readProperties() {
+		int size = buffer.getInt();
+		if (size < 0) {
+			return null;
+		}
+		List<Property> properties = new ArrayList<Property>(size);
+		for (int i = 0; i < size; i++) {
+			String name = readString();
+			String doc = readString();
+			TypeRef type = readTypeRef();
+			boolean optional = readBoolean();
+			JsonElement defaultValue = readJson();
+
+			Property property;
+			if (defaultValue != null) {
+				property = new Property(name, doc, type, defaultValue);
+				property.setOptional(optional);
+			} else {
+				property = new Property(name, doc, type, optional);
+			}
+			property.setReadOnly(readBoolean());
+			property.setFinal(readBoolean());
+			properties.add(property);
+		}
+		return properties;
+	}
+
+	private List<TypeRef> readTypeRefs() {
+		int size = buffer.getInt();
+		if (size < 0) {
+			return null;
+		}
+		List<TypeRef> typeRefs = new ArrayList<TypeRef>(size);
+		for (int i = 0; i < size; i++) {
+			typeRefs.add(readTypeRef());
+		}
+		return typeRefs;
+	}
+
+	private TypeRef readTypeRef() {
+		if (!readBoolean()) {
+			return null;
+		}
+
+		TypeRef typeRef = new TypeRef(readString(), readBoolean());
+		links.add(new Link(typeRef, readString(), buffer.get(), buffer
+				.getInt()));
+		return typeRef;
+	}
+
+	private Map<String, Map<String, String>> readSections() {
+		int size = buffer.getInt();
+		if (size < 0) {
+			return null;
+		}
+		Map<String, Map<String, String>> sections = new LinkedHashMap<String, Map<String, String>>();
+		for (int i = 0; i < size; i++) {
+			sections.put(readString(), readMap());
+		}
+		return sections;
+	}
+
+	private Map<String, String> readMap() {
+		int size = buffer.getInt();
+		if (size < 0) {
+			return null;
+		}
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		for (int i = 0; i < size; i++) {
+			map.put(readString(), readString());
+		}
+		return map;
+	}
+
+	private List<String> readStrings() {
+		int size = buffer.getInt();
+		if (size < 0) {
+			return null;
+		}
+		List<String> values = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readString());
+		}
+		return values;
+	}
+
+	private JsonElement readJson() {
+		String json = readString();
+		return json != null ? new JsonParser().parse(json) : null;
+	}
+
+	private boolean readBoolean() {
+		return buffer.get() != 0;
+	}
+
+	private String readString() {
+		int index = buffer.getInt();
+		return index >= 0 ? strings[index] : null;
+	}
+}
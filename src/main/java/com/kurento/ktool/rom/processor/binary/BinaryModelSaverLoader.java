@@ -0,0 +1,68 @@
+package com.kurento.ktool.rom.processor.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.kurento.ktool.rom.processor.model.Model;
+import com.kurento.ktool.rom.processor.model.Type;
+
+/**
+ * Saves and loads resolved models in a compact binary form (.kmd.bin files).
+ *
+ * Strings are stored once in a table and referenced by index, and type
+ * references store the model, kind and position of the type they point to,
+ * so a loaded model is linked to its types without looking up their names.
+ * Models are loaded unresolved and linked when resolved by a
+ * {@link com.kurento.ktool.rom.processor.codegen.ModelManager} that contains
+ * their imports.
+ */
+public class BinaryModelSaverLoader {
+
+	public static final String FILE_EXTENSION = ".kmd.bin";
+
+	static final int MAGIC = 0x4B4D4442; // "KMDB"
+	static final int FORMAT_VERSION = 1;
+
+	static final byte KIND_PRIMITIVE = 0;
+	static final byte KIND_REMOTE_CLASS = 1;
+	static final byte KIND_COMPLEX_TYPE = 2;
+	static final byte KIND_EVENT = 3;
+
+	static final List<Type> PRIMITIVES = Collections.unmodifiableList(Arrays
+			.<Type> asList(Model.BOOLEAN, Model.STRING, Model.INT, Model.FLOAT));
+
+	private static BinaryModelSaverLoader INSTANCE = new BinaryModelSaverLoader();
+
+	public static BinaryModelSaverLoader getInstance() {
+		return INSTANCE;
+	}
+
+	private BinaryModelSaverLoader() {
+	}
+
+	public Model loadFromFile(Path file) throws IOException {
+		return new BinaryModelReader(ByteBuffer.wrap(Files.readAllBytes(file)),
+				file.toString()).readModel();
+	}
+
+	/**
+	 * Writes a model. It has to be resolved, as references are stored as the
+	 * location of the types they point to.
+	 */
+	public void writeToFile(Model model, File file) throws IOException {
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(
+				file))) {
+			new BinaryModelWriter(model).write(os);
+		}
+	}
+
+}
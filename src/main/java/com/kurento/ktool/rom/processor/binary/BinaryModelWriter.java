@@ -0,0 +1,296 @@
+package com.kurento.ktool.rom.processor.binary;
+
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.FORMAT_VERSION;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_COMPLEX_TYPE;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_EVENT;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_PRIMITIVE;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.KIND_REMOTE_CLASS;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.MAGIC;
+import static com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader.PRIMITIVES;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.kurento.ktool.rom.processor.codegen.KurentoRomProcessorException;
+import com.kurento.ktool.rom.processor.model.Code;
+import com.kurento.ktool.rom.processor.model.ComplexType;
+import com.kurento.ktool.rom.processor.model.DataItem;
+import com.kurento.ktool.rom.processor.model.Event;
+import com.kurento.ktool.rom.processor.model.Import;
+import com.kurento.ktool.rom.processor.model.Method;
+import com.kurento.ktool.rom.processor.model.Model;
+import com.kurento.ktool.rom.processor.model.Param;
+import com.kurento.ktool.rom.processor.model.Property;
+import com.kurento.ktool.rom.processor.model.RemoteClass;
+import com.kurento.ktool.rom.processor.model.Return;
+import com.kurento.ktool.rom.processor.model.Type;
+import com.kurento.ktool.rom.processor.model.TypeRef;
+
+class BinaryModelWriter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static class TypeLocation {
+		private final String modelName;
+		private final byte kind;
+		private final int index;
+
+		TypeLocation(String modelName, byte kind, int index) {
+			this.modelName = modelName;
+			this.kind = kind;
+			this.index = index;
+		}
+	}
+
+	private final Model model;
+	private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+	private final Map<Type, TypeLocation> typeLocations = new IdentityHashMap<Type, TypeLocation>();
+
+	private DataOutputStream out;
+
+	BinaryModelWriter(Model model) {
+		this.model = model;
+
+		for (int i = 0; i < PRIMITIVES.size(); i++) {
+			typeLocations.put(PRIMITIVES.get(i), new TypeLocation(null,
+					KIND_PRIMITIVE, i));
+		}
+
+		addTypeLocations(model);
+		for (Model dependencyModel : model.getDependencyModels()) {
+			addTypeLocations(dependencyModel);
+		}
+	}
+
+	private void addTypeLocations(Model model) {
+		addTypeLocations(model, KIND_REMOTE_CLASS, model.getRemoteClasses());
+		addTypeLocations(model, KIND_COMPLEX_TYPE, model.getComplexTypes());
+		addTypeLocations(model, KIND_EVENT, model.getEvents());
+	}
+
+	private void addTypeLocations(Model model, byte kind,
+			List<? extends Type> types) {
+		for (int i = 0; i < types.size(); i++) {
+			typeLocations.put(types.get(i), new TypeLocation(model.getName(),
+					kind, i));
+		}
+	}
+
+	void write(OutputStream os) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		out = new DataOutputStream(body);
+		writeModel();
+		out.flush();
+
+		DataOutputStream header = new DataOutputStream(os);
+		header.writeInt(MAGIC);
+		header.writeInt(FORMAT_VERSION);
+		header.writeInt(strings.size());
+		for (String string : strings.keySet()) {
+			byte[] bytes = string.getBytes(UTF8);
+			header.writeInt(bytes.length);
+			header.write(bytes);
+		}
+		header.flush();
+
+		body.writeTo(os);
+	}
+
+	private void writeModel() throws IOException {
+
+		writeString(model.getName());
+		writeString(model.getVersion());
+		writeString(model.getKurentoVersion());
+		writeString(model.getRepository());
+
+		out.writeInt(model.getImports().size());
+		for (Import importInfo : model.getImports()) {
+			writeString(importInfo.getName());
+			writeString(importInfo.getVersion());
+		}
+
+		Code code = model.getCode();
+		out.writeBoolean(code != null);
+		if (code != null) {
+			writeSections(code.getKmd());
+			writeSections(code.getApi());
+			writeMap(code.getImplementation());
+		}
+
+		out.writeInt(model.getComplexTypes().size());
+		for (ComplexType complexType : model.getComplexTypes()) {
+			writeString(complexType.getName());
+			writeString(complexType.getDoc());
+			out.writeByte(complexType.getTypeFormat() != null ? complexType
+					.getTypeFormat().ordinal() : -1);
+			writeTypeRef(complexType.getExtends());
+			writeProperties(complexType.getProperties());
+			writeStrings(complexType.getValues());
+		}
+
+		out.writeInt(model.getEvents().size());
+		for (Event event : model.getEvents()) {
+			writeString(event.getName());
+			writeString(event.getDoc());
+			writeTypeRef(event.getExtends());
+			writeProperties(event.getProperties());
+		}
+
+		out.writeInt(model.getRemoteClasses().size());
+		for (RemoteClass remoteClass : model.getRemoteClasses()) {
+			writeString(remoteClass.getName());
+			writeString(remoteClass.getDoc());
+			writeTypeRef(remoteClass.getExtends());
+			out.writeBoolean(remoteClass.isAbstract());
+			out.writeBoolean(remoteClass.getConstructor() != null);
+			if (remoteClass.getConstructor() != null) {
+				writeMethod(remoteClass.getConstructor());
+			}
+			writeMethods(remoteClass.getMethods());
+			writeProperties(remoteClass.getProperties());
+			writeTypeRefs(remoteClass.getEvents());
+		}
+	}
+
+	private void writeMethods(List<Method> methods) throws IOException {
+		writeSize(methods);
+		if (methods != null) {
+			for (Method method : methods) {
+				writeMethod(method);
+			}
+		}
+	}
+
+	private void writeMethod(Method method) throws IOException {
+		writeString(method.getName());
+		writeString(method.getDoc());
+
+		writeSize(method.getParams());
+		if (method.getParams() != null) {
+			for (Param param : method.getParams()) {
+				writeDataItem(param);
+			}
+		}
+
+		Return returnProp = method.getReturn();
+		out.writeBoolean(returnProp != null);
+		if (returnProp != null) {
+			writeTypeRef(returnProp.getType());
+			writeString(returnProp.getDoc());
+		}
+	}
+
+	private void writeProperties(List<Property> properties) throws IOException {
+		writeSize(properties);
+		if (properties != null) {
+			for (Property property : properties) {
+				writeDataItem(property);
+				out.writeBoolean(property.isReadOnly());
+				out.writeBoolean(property.isFinal());
+			}
+		}
+	}
+
+	private void writeDataItem(DataItem dataItem) throws IOException {
+		writeString(dataItem.getName());
+		writeString(dataItem.getDoc());
+		writeTypeRef(dataItem.getType());
+		out.writeBoolean(dataItem.isOptional());
+		writeString(dataItem.getDefaultValue() != null ? dataItem
+				.getDefaultValue().toString() : null);
+	}
+
+	private void writeTypeRefs(List<TypeRef> typeRefs) throws IOException {
+		writeSize(typeRefs);
+		if (typeRefs != null) {
+			for (TypeRef typeRef : typeRefs) {
+				writeTypeRef(typeRef);
+			}
+		}
+	}
+
+	private void writeTypeRef(TypeRef typeRef) throws IOException {
+
+		out.writeBoolean(typeRef != null);
+		if (typeRef == null) {
+			return;
+		}
+
+		TypeLocation location = typeLocations.get(typeRef.getType());
+		if (location == null) {
+			throw new KurentoRomProcessorException("Type '"
+					+ typeRef.getName() + "' of model '" + model.getName()
+					+ "' is not resolved. Only resolved models can be written"
+					+ " in binary form");
+		}
+
+		writeString(typeRef.getName());
+		out.writeBoolean(typeRef.isList());
+		writeString(location.modelName);
+		out.writeByte(location.kind);
+		out.writeInt(location.index);
+	}
+
+	private void writeSections(Map<String, Map<String, String>> sections)
+			throws IOException {
+		writeSize(sections);
+		if (sections != null) {
+			for (Entry<String, Map<String, String>> section : sections
+					.entrySet()) {
+				writeString(section.getKey());
+				writeMap(section.getValue());
+			}
+		}
+	}
+
+	private void writeMap(Map<String, String> map) throws IOException {
+		writeSize(map);
+		if (map != null) {
+			for (Entry<String, String> entry : map.entrySet()) {
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+			}
+		}
+	}
+
+	private void writeStrings(List<String> values) throws IOException {
+		writeSize(values);
+		if (values != null) {
+			for (String value : values) {
+				writeString(value);
+			}
+		}
+	}
+
+	private void writeSize(List<?> list) throws IOException {
+		out.writeInt(list != null ? list.size() : -1);
+	}
+
+	private void writeSize(Map<?, ?> map) throws IOException {
+		out.writeInt(map != null ? map.size() : -1);
+	}
+
+	private void writeString(String string) throws IOException {
+
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.put(string, index);
+		}
+		out.writeInt(index);
+	}
+}
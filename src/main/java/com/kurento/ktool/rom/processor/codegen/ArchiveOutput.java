@@ -0,0 +1,219 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates files into a zip (or jar) archive instead of a directory. A
+ * codegen dir is an archive when one of its elements ends with '!', as in
+ * "out.jar!/" or "out.jar!/src/main/java": the archive is "out.jar" and the
+ * files are generated in the folder that follows the '!'.
+ *
+ * Generated files are kept in pooled buffers, as in memory mode, and the
+ * archive is written, replacing the previous one, when the transaction is
+ * committed. Only the files too big to be buffered are staged, in temporary
+ * files next to the archive. Entries are sorted by name and all of them have
+ * the same timestamp, so generating the same files always produces the same
+ * archive.
+ */
+class ArchiveOutput extends OutputTransaction {
+
+	private final Path archiveFile;
+	private final Path folder;
+
+	private ArchiveOutput(Path archiveFile, Path folder, boolean sync) {
+		super(null, null, sync);
+		this.archiveFile = archiveFile;
+		this.folder = folder;
+	}
+
+	/**
+	 * @return the archive output for a codegen dir, or null if it is not an
+	 *         archive
+	 */
+	static ArchiveOutput create(Path codegenDir, boolean sync) {
+
+		int count = codegenDir.getNameCount();
+		for (int i = 0; i < count; i++) {
+			String name = codegenDir.getName(i).toString();
+			if (name.length() > 1 && name.endsWith("!")) {
+
+				Path archiveFile = codegenDir;
+				for (int j = count - 1; j > i; j--) {
+					archiveFile = archiveFile.getParent();
+				}
+				archiveFile = archiveFile.resolveSibling(name.substring(0,
+						name.length() - 1));
+
+				Path folder = i + 1 < count ? codegenDir.subpath(i + 1, count)
+						: Paths.get("");
+
+				return new ArchiveOutput(archiveFile, folder, sync);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the folder of the archive where files are generated. It is a
+	 *         relative path that is only used to name the entries.
+	 */
+	Path getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Deletes the temporary files of the archive left by generations that
+	 * didn't finish. Recent ones are kept, as in the codegen dirs (see
+	 * {@link GeneratedFileWriter#deleteTempFiles(Path)}).
+	 */
+	void deleteTempFiles() throws IOException {
+
+		Path parent = archiveFile.toAbsolutePath().getParent();
+		if (!Files.isDirectory(parent)) {
+			return;
+		}
+
+		String name = "." + archiveFile.getFileName() + ".";
+		Pattern pattern = Pattern.compile(Pattern.quote(name)
+				+ "[0-9a-f]{1,16}\\.tmp");
+
+		// Both temporary archives and staged files
+		try (DirectoryStream<Path> directoryStream = Files
+				.newDirectoryStream(parent, "*.tmp")) {
+			for (Path file : directoryStream) {
+				if (pattern.matcher(file.getFileName().toString()).matches()
+						&& GeneratedFileWriter.isStaleTempFile(file)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	@Override
+	Path getStagingPath() {
+		return archiveFile.toAbsolutePath();
+	}
+
+	/**
+	 * Writes the archive with the entries sorted by name.
+	 */
+	@Override
+	public synchronized void commit() throws IOException {
+
+		Map<String, GeneratedFileWriter> entries = new TreeMap<String, GeneratedFileWriter>();
+		for (GeneratedFileWriter file : getFiles()) {
+			entries.put(getEntryName(file), file);
+		}
+
+		try {
+			writeArchive(entries);
+		} finally {
+			rollback();
+		}
+	}
+
+	private String getEntryName(GeneratedFileWriter file) {
+		String entryName = file.getOutputPath();
+		if (entryName.equals("..") || entryName.startsWith("../")) {
+			throw new KurentoRomProcessorException("File '"
+					+ file.getFileName() + "' is outside of archive "
+					+ archiveFile);
+		}
+		return entryName;
+	}
+
+	private void writeArchive(Map<String, GeneratedFileWriter> entries)
+			throws IOException {
+
+		// Local time, so the date stored in entries is the same in every
+		// time zone
+		long time = new GregorianCalendar(1980, Calendar.FEBRUARY, 1)
+				.getTimeInMillis();
+
+		Path parent = archiveFile.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+
+		Path tempFile = null;
+		FileChannel channel = null;
+		while (channel == null) {
+			tempFile = GeneratedFileWriter.createTempFileName(parent
+					.resolve(archiveFile.getFileName()));
+			try {
+				channel = FileChannel.open(tempFile,
+						StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException e) {
+				// Try another name
+			}
+		}
+
+		try {
+			try (ZipOutputStream zip = new ZipOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+				Set<String> folders = new HashSet<String>();
+				for (Map.Entry<String, GeneratedFileWriter> entry : entries
+						.entrySet()) {
+					String entryName = entry.getKey();
+
+					for (int i = entryName.indexOf('/'); i != -1; i = entryName
+							.indexOf('/', i + 1)) {
+						String folderName = entryName.substring(0, i + 1);
+						if (folders.add(folderName)) {
+							putEntry(zip, folderName, time);
+							zip.closeEntry();
+						}
+					}
+
+					putEntry(zip, entryName, time);
+					entry.getValue().writeContentTo(zip);
+					zip.closeEntry();
+				}
+
+				zip.finish();
+				zip.flush();
+				if (isSync()) {
+					channel.force(true);
+				}
+			}
+
+			try {
+				Files.move(tempFile, archiveFile,
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, archiveFile,
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			channel.close();
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static void putEntry(ZipOutputStream zip, String entryName,
+			long time) throws IOException {
+		ZipEntry zipEntry = new ZipEntry(entryName);
+		zipEntry.setTime(time);
+		zip.putNextEntry(zipEntry);
+	}
+}
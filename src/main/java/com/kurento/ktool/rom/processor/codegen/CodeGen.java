@@ -1,19 +1,25 @@
 package com.kurento.ktool.rom.processor.codegen;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.io.PrintStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.google.gson.JsonObject;
 import com.kurento.ktool.rom.processor.codegen.function.CamelToUnderscore;
@@ -30,34 +36,161 @@ import com.kurento.ktool.rom.processor.model.Model;
 import com.kurento.ktool.rom.processor.model.Type;
 
 import freemarker.template.Configuration;
-import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModelException;
 
 public class CodeGen {
 
 	private final Path templatesFolder;
 	private final Path outputFolder;
 	private final Configuration cfg;
+	private final DependencyTrackingObjectWrapper objectWrapper;
 
 	private final boolean listGeneratedFiles;
 	private final boolean verbose;
 	private final boolean overwrite;
 	private final JsonObject config;
+	private final int threads;
+
+	private GenerationCache cache;
+	private OutputManifest manifest;
+	private OutputTransaction transaction;
+	private ForkJoinPool renderPool;
+	private PrintStream out = System.out;
+	private final Map<String, String> templateHashes = new HashMap<String, String>();
+
+	// Shared by all the templates, so the caches of the functions are reused
+	private final TemplateHashModel sharedVariables;
+
+	private static final Pattern INCLUDE_PATTERN = Pattern
+			.compile("[<\\[]#(?:include|import)\\s+\"([^\"]+)\"");
+
+	/**
+	 * A template applied to a single model element. Each task owns its data
+	 * model root, on top of variables that are only read, so tasks can be
+	 * rendered concurrently.
+	 */
+	private class RenderTask implements Callable<GeneratedFileWriter> {
+
+		private final Template template;
+		private final TemplateHashModel root;
+		private final Type type;
+
+		// Identification of the render in the generation cache
+		private String id;
+		private String key;
+		private List<String> cachedFiles;
+		private ModelFingerprint fingerprint;
+		private Map<String, String> dependencies;
+
+		RenderTask(Template template, TemplateHashModel root, Type type) {
+			this.template = template;
+			this.root = root;
+			this.type = type;
+		}
+
+		@Override
+		public GeneratedFileWriter call() throws TemplateException,
+				IOException {
+
+			if (fingerprint == null) {
+				return render();
+			}
+
+			objectWrapper.startRecording(fingerprint);
+			Set<String> dependencyKeys;
+			try {
+				return render();
+			} finally {
+				dependencyKeys = objectWrapper.stopRecording();
+				if (type != null) {
+					dependencyKeys.add(fingerprint.getDependencyKey(type));
+				}
+				dependencies = new TreeMap<String, String>();
+				for (String dependencyKey : dependencyKeys) {
+					dependencies.put(dependencyKey,
+							fingerprint.getFingerprint(dependencyKey));
+				}
+			}
+		}
+
+		private GeneratedFileWriter render() throws TemplateException,
+				IOException {
+			GeneratedFileWriter out = new GeneratedFileWriter(outputFolder,
+					overwrite, verbose, isInMemory(),
+					transaction != null ? transaction.getStagingPath() : null);
+			boolean rendered = false;
+			try {
+				template.process(root, out);
+				out.close();
+				rendered = true;
+				return out;
+			} finally {
+				if (!rendered) {
+					out.discard();
+				}
+			}
+		}
+	}
 
 	public CodeGen(Path templatesFolder, Path outputFolder, boolean verbose,
 			boolean listGeneratedFiles, boolean overwrite, JsonObject config)
 			throws IOException {
+		this(templatesFolder, outputFolder, verbose, listGeneratedFiles,
+				overwrite, config, 1);
+	}
+
+	/**
+	 * @param threads
+	 *            number of threads used to render templates. With a value
+	 *            lower than 2 templates are rendered in the calling thread.
+	 */
+	public CodeGen(Path templatesFolder, Path outputFolder, boolean verbose,
+			boolean listGeneratedFiles, boolean overwrite, JsonObject config,
+			int threads) throws IOException {
+		this(createConfiguration(templatesFolder), templatesFolder,
+				outputFolder, verbose, listGeneratedFiles, overwrite, config,
+				threads);
+	}
 
+	/**
+	 * @param cfg
+	 *            configuration created with
+	 *            {@link #createConfiguration(Path)} for the templates folder.
+	 *            It can be shared by several instances to reuse its template
+	 *            cache.
+	 */
+	public CodeGen(Configuration cfg, Path templatesFolder, Path outputFolder,
+			boolean verbose, boolean listGeneratedFiles, boolean overwrite,
+			JsonObject config, int threads) throws IOException {
+
+		this.threads = threads;
 		this.verbose = verbose;
 		this.listGeneratedFiles = listGeneratedFiles;
 		this.overwrite = overwrite;
 		this.templatesFolder = templatesFolder;
 		this.outputFolder = outputFolder;
 		this.config = config;
+		this.cfg = cfg;
+		this.objectWrapper = (DependencyTrackingObjectWrapper) cfg
+				.getObjectWrapper();
 
-		cfg = new Configuration();
+		try {
+			this.sharedVariables = TemplateRoot.createShared(
+					createSharedVariables(config), objectWrapper);
+		} catch (TemplateModelException e) {
+			throw new KurentoRomProcessorException(
+					"Config can not be used in templates", e);
+		}
+	}
+
+	public static Configuration createConfiguration(Path templatesFolder)
+			throws IOException {
+
+		Configuration cfg = new Configuration();
 
 		// Specify the data source where the template files come from. Here I
 		// set a
@@ -67,7 +200,7 @@ public class CodeGen {
 		// Specify how templates will see the data-model. This is an advanced
 		// topic...
 		// for now just use this:
-		cfg.setObjectWrapper(new DefaultObjectWrapper());
+		cfg.setObjectWrapper(new DependencyTrackingObjectWrapper());
 
 		// Set your preferred charset template files are stored in. UTF-8 is
 		// a good choice in most applications:
@@ -86,24 +219,184 @@ public class CodeGen {
 		// cfg.setIncompatibleImprovements(new Version(2, 3, 19)); // FreeMarker
 		// 2.3.19
 
+		return cfg;
+	}
+
+	/**
+	 * Sets the cache used to skip the renders whose inputs haven't changed
+	 * since the previous generation. Source code is not printed in verbose mode
+	 * for renders that are skipped.
+	 */
+	public void setCache(GenerationCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets the manifest used to know if the files to generate have the same
+	 * content as the existing ones, and where the generated files are recorded.
+	 */
+	public void setManifest(OutputManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Sets the transaction where generated files are staged. They are not
+	 * written to the codegen dir until it is committed. Without a transaction,
+	 * each file is written as soon as it is generated.
+	 */
+	public void setTransaction(OutputTransaction transaction) {
+		this.transaction = transaction;
+	}
+
+	/**
+	 * Sets the pool where templates are rendered when there are several
+	 * threads, so it can be shared by several instances. Without it, a pool is
+	 * created for each model.
+	 */
+	public void setRenderPool(ForkJoinPool renderPool) {
+		this.renderPool = renderPool;
+	}
+
+	/**
+	 * Sets the stream where generated files are listed, instead of
+	 * {@link System#out}.
+	 */
+	public void setOut(PrintStream out) {
+		this.out = out;
+	}
+
+	private boolean isInMemory() {
+		return transaction != null && transaction.isInMemory();
+	}
+
+	/**
+	 * @return if generated files replace the files in their output path, so
+	 *         they can be compared with them
+	 */
+	private boolean isInPlace() {
+		return transaction == null || !transaction.isInMemory()
+				&& transaction.getStagingPath() == null;
 	}
 
 	public void generateCode(Model model) throws IOException, TemplateException {
 
+		ModelFingerprint fingerprint = cache != null ? new ModelFingerprint(
+				model) : null;
+
+		if (threads > 1) {
+			generateCodeInParallel(model, fingerprint);
+			return;
+		}
+
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(
+				templatesFolder, "*.ftl")) {
+
+			for (Path path : directoryStream) {
+				for (RenderTask task : createRenderTasks(path, model,
+						fingerprint)) {
+					if (task.cachedFiles != null) {
+						listCachedFiles(task);
+					} else {
+						generateFile(task, task.call());
+					}
+				}
+			}
+		}
+	}
+
+	private void generateCodeInParallel(Model model,
+			ModelFingerprint fingerprint) throws IOException, TemplateException {
+
+		List<RenderTask> tasks = new ArrayList<RenderTask>();
+
 		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(
 				templatesFolder, "*.ftl")) {
 
 			for (Path path : directoryStream) {
-				String name = path.getFileName().toString();
-				String modelType = name.split("_")[0];
+				tasks.addAll(createRenderTasks(path, model, fingerprint));
+			}
+		}
+
+		ForkJoinPool pool = renderPool != null ? renderPool
+				: new ForkJoinPool(threads);
+		List<Future<GeneratedFileWriter>> results = new ArrayList<Future<GeneratedFileWriter>>();
+		int generated = 0;
+		try {
+			for (RenderTask task : tasks) {
+				results.add(task.cachedFiles == null ? pool.submit(task) : null);
+			}
+
+			// Files are written in the same order as in sequential mode, so
+			// the output (and the listing of generated files) is identical
+			for (; generated < tasks.size(); generated++) {
+				RenderTask task = tasks.get(generated);
+				if (task.cachedFiles != null) {
+					listCachedFiles(task);
+				} else {
+					generateFile(task, getResult(results.get(generated)));
+				}
+			}
+		} finally {
+			if (pool != renderPool) {
+				pool.shutdownNow();
+			}
+			discardResults(results, generated);
+		}
+	}
+
+	/**
+	 * Discards the renders that won't be written because another one has
+	 * failed, so they don't leave temporary files behind.
+	 */
+	private void discardResults(List<Future<GeneratedFileWriter>> results,
+			int from) {
+
+		for (int i = from; i < results.size(); i++) {
+			if (results.get(i) != null) {
+				results.get(i).cancel(false);
+			}
+		}
 
-				generateCode(name, model, modelType);
+		for (int i = from; i < results.size(); i++) {
+			Future<GeneratedFileWriter> result = results.get(i);
+			if (result != null && !result.isCancelled()) {
+				try {
+					result.get().discard();
+				} catch (Exception e) {
+					// The render failed or its output is already discarded
+				}
 			}
 		}
 	}
 
-	private void generateCode(String templateName, Model model, String modelType)
-			throws TemplateException, IOException {
+	private GeneratedFileWriter getResult(Future<GeneratedFileWriter> result)
+			throws IOException, TemplateException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoRomProcessorException(
+					"Interrupted while rendering templates", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TemplateException) {
+				throw (TemplateException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof java.lang.Error) {
+				throw (java.lang.Error) cause;
+			}
+			throw new KurentoRomProcessorException(cause);
+		}
+	}
+
+	private List<RenderTask> createRenderTasks(Path templatePath, Model model,
+			ModelFingerprint fingerprint) throws IOException {
+
+		String templateName = templatePath.getFileName().toString();
+		String modelType = templateName.split("_")[0];
 
 		Template temp = cfg.getTemplate(templateName);
 
@@ -123,116 +416,222 @@ public class CodeGen {
 							+ "'. It should be 'remoteClass' or 'complexType' or 'event'");
 		}
 
-		Map<String, Object> root = new HashMap<String, Object>();
-		root.put("getJavaObjectType", new JavaObjectType());
-		root.put("getCppObjectType", new CppObjectType());
-		root.put("getJsonCppTypeData", new JsonCppTypeData());
-		root.put("escapeString", new EscapeString());
-		root.put("camelToUnderscore", new CamelToUnderscore());
-		root.put("remoteClassDependencies", new RemoteClassDependencies());
-		root.put("isFirstConstructorParam", new IsFirstConstructorParam());
-		root.put("sphinxLinks", new SphinxLinks());
-		root.put("getJsNamespace", new JsNamespace());
-		root.put("packageToFolder", new PackageToFolder());
-
-		root.put("model", model);
-		if (this.config != null) {
-			JsonObjectAsMap mapper = new JsonObjectAsMap();
-			root.put("config", mapper.createMapFromJsonObject(config));
-		} else {
-			root.put("config", Collections.emptyMap());
-		}
+		List<RenderTask> tasks = new ArrayList<RenderTask>();
 
 		if (types == null) {
-			generateFile(temp, root);
+			tasks.add(new RenderTask(temp, createRoot(model, null, null), null));
 		} else {
-
 			for (Type type : types) {
+				tasks.add(new RenderTask(temp, createRoot(model, modelType,
+						type), type));
+			}
+		}
+
+		if (cache != null) {
+			String templateHash = getTemplateHash(templateName);
+			String configHash = config != null ? config.toString() : null;
+
+			for (RenderTask task : tasks) {
+				task.id = model.getName() + "/" + templateName
+						+ (task.type != null ? "/" + task.type.getName() : "");
+				task.key = GenerationCache.createKey(task.id, templateHash,
+						configHash);
+				task.fingerprint = fingerprint;
+				task.cachedFiles = cache.getUpToDateFiles(task.id, task.key,
+						fingerprint);
+			}
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * The hash of a template includes the templates it includes or imports, so
+	 * changes in macro files are also detected.
+	 */
+	private String getTemplateHash(String templateName) throws IOException {
+
+		String hash = templateHashes.get(templateName);
+
+		if (hash == null) {
+			Digester digester = new Digester();
+			addTemplate(digester, templateName, new HashSet<String>());
+			hash = digester.digest();
+			templateHashes.put(templateName, hash);
+		}
+
+		return hash;
+	}
+
+	private void addTemplate(Digester digester, String templateName,
+			Set<String> visitedTemplates) throws IOException {
+
+		if (!visitedTemplates.add(templateName)) {
+			return;
+		}
+
+		digester.add(templateName);
+
+		Path templatePath = templatesFolder.resolve(templateName);
+		if (!Files.exists(templatePath)) {
+			digester.add(-1);
+			return;
+		}
+
+		byte[] content = Files.readAllBytes(templatePath);
+		digester.add(content);
 
-				if (modelType.equals("remoteClass")) {
-					root.put("remoteClass", type);
-				} else if (modelType.equals("complexType")) {
-					root.put("complexType", type);
-				} else if (modelType.equals("event")) {
-					root.put("event", type);
+		Matcher matcher = INCLUDE_PATTERN.matcher(new String(content, "UTF-8"));
+		while (matcher.find()) {
+			String includedName = matcher.group(1);
+			if (includedName.startsWith("/")) {
+				includedName = includedName.substring(1);
+			} else {
+				int separator = templateName.lastIndexOf('/');
+				if (separator != -1) {
+					includedName = templateName.substring(0, separator + 1)
+							+ includedName;
 				}
+			}
+			addTemplate(digester, includedName, visitedTemplates);
+		}
+	}
 
-				generateFile(temp, root);
+	private void listCachedFiles(RenderTask task) {
+		if (manifest != null) {
+			for (String fileName : task.cachedFiles) {
+				manifest.keep(fileName);
+			}
+		}
+		if (listGeneratedFiles) {
+			for (String fileName : task.cachedFiles) {
+				out.println("Processed file:\t" + fileName
+						+ "\t(not generated)");
 			}
 		}
 	}
 
-	private void generateFile(Template temp, Map<String, Object> root)
-			throws TemplateException, IOException {
+	private static Map<String, Object> createSharedVariables(JsonObject config) {
+
+		Map<String, Object> variables = new HashMap<String, Object>();
+		variables.put("getJavaObjectType", new JavaObjectType());
+		variables.put("getCppObjectType", new CppObjectType());
+		variables.put("getJsonCppTypeData", new JsonCppTypeData());
+		variables.put("escapeString", new EscapeString());
+		variables.put("camelToUnderscore", new CamelToUnderscore());
+		variables.put("remoteClassDependencies", new RemoteClassDependencies());
+		variables.put("isFirstConstructorParam", new IsFirstConstructorParam());
+		variables.put("sphinxLinks", new SphinxLinks());
+		variables.put("getJsNamespace", new JsNamespace());
+		variables.put("packageToFolder", new PackageToFolder());
+
+		if (config != null) {
+			JsonObjectAsMap mapper = new JsonObjectAsMap();
+			variables.put("config", mapper.createMapFromJsonObject(config));
+		} else {
+			variables.put("config", Collections.emptyMap());
+		}
+
+		return variables;
+	}
+
+	private TemplateHashModel createRoot(Model model, String elementKey,
+			Type element) {
+		return new TemplateRoot(sharedVariables, objectWrapper, "model",
+				model, elementKey, element);
+	}
+
+	private void generateFile(RenderTask task, GeneratedFileWriter output)
+			throws IOException {
 
-		StringWriter out = new StringWriter();
-		temp.process(root, out);
-		String tempOutput = out.toString();
+		Template temp = task.template;
 
-		if (tempOutput.isEmpty()) {
-			System.out.println("No file generation because applying template '"
+		if (output.isEmpty()) {
+			out.println("No file generation because applying template '"
 					+ temp.getName() + "' is empty");
+			if (cache != null) {
+				cache.update(task.id, task.key, task.dependencies,
+						Collections.<String> emptyList());
+			}
 			return;
 		}
 
-		StringTokenizer st = new StringTokenizer(tempOutput);
+		String fileName = output.getFileName();
+		Path outputFile = output.getOutputFile();
+		String hash = output.getHash();
 
-		String fileName = st.nextToken();
+		// A file staged in this generation is compared with its staged
+		// content, as if it had already been written
+		GeneratedFileWriter staged = transaction != null ? transaction
+				.getFile(outputFile) : null;
+		boolean inPlace = isInPlace();
 
-		File outputFile = new File(outputFolder.toFile(), fileName);
-
-		if (!outputFile.getParentFile().exists()) {
-			outputFile.getParentFile().mkdirs();
-		}
+		boolean generateFile;
+		boolean added = false;
+		try {
+			if (inPlace) {
+				Files.createDirectories(outputFile.getParent());
+			}
 
-		String sourceCode = tempOutput.substring(fileName.length() + 1,
-				tempOutput.length());
+			generateFile = staged == null
+					&& (!inPlace || !Files.exists(outputFile));
+			if (!generateFile && overwrite) {
+				if (staged != null) {
+					generateFile = !staged.getHash().equals(hash);
+				} else {
+					String oldHash = manifest != null ? manifest
+							.getHash(fileName) : null;
+					generateFile = oldHash != null ? !oldHash.equals(hash)
+							: !output.contentEquals(outputFile);
+				}
+			}
 
-		boolean generateFile = !outputFile.exists();
-		if (outputFile.exists() && overwrite) {
-			generateFile = true;
-			String oldContent = readFile(outputFile);
+			if (generateFile && transaction != null) {
+				transaction.add(output);
+				added = true;
+			} else if (generateFile) {
+				output.commit();
+			}
+		} finally {
+			if (!added) {
+				output.discard();
+			}
+		}
 
-			if (oldContent.equals(sourceCode)) {
-				generateFile = false;
+		// Staged files are recorded in the manifest when they are committed
+		if (manifest != null && !added && staged == null) {
+			if (generateFile || overwrite) {
+				manifest.update(fileName, hash);
+			} else {
+				// Not overwritten, so its content is unknown
+				manifest.keep(fileName);
 			}
 		}
 
-		if (generateFile) {
-			Writer writer = new FileWriter(outputFile);
-			writer.write(sourceCode);
-			writer.close();
+		// Staged files are recorded in the cache once they are in place, as
+		// it stores their size and modification time
+		if (cache != null && (added || staged != null)) {
+			transaction.updateCache(task.id, task.key, task.dependencies,
+					Arrays.asList(fileName));
+		} else if (cache != null) {
+			cache.update(task.id, task.key, task.dependencies,
+					Arrays.asList(fileName));
 		}
 
 		if (verbose) {
-			System.out.println("File: " + fileName);
-			System.out.println();
-			System.out.println(sourceCode);
-			System.out.println("---------------------------------------");
+			out.println("File: " + fileName);
+			out.println();
+			out.println(output.getSourceCode());
+			out.println("---------------------------------------");
 		}
 
 		if (listGeneratedFiles) {
-			System.out.print("Processed file:\t" + fileName);
+			out.print("Processed file:\t" + fileName);
 			if (!generateFile) {
-				System.out.println("\t(not generated)");
+				out.println("\t(not generated)");
 			} else {
-				System.out.println();
-			}
-		}
-	}
-
-	public static String readFile(File file) throws IOException {
-		int len;
-		char[] chr = new char[1024];
-		final StringBuffer buffer = new StringBuffer();
-		final FileReader reader = new FileReader(file);
-		try {
-			while ((len = reader.read(chr)) > 0) {
-				buffer.append(chr, 0, len);
+				out.println();
 			}
-		} finally {
-			reader.close();
 		}
-		return buffer.toString();
 	}
 }
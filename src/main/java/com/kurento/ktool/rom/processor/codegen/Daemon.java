@@ -0,0 +1,183 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a JVM running and executes the requests received in a loopback port,
+ * reusing the templates and dependency models loaded by previous requests.
+ *
+ * A request is a secret in the first line, the working directory in the
+ * second one, followed by one argument per line and an empty line. The output
+ * of the execution is sent back, followed by a line with the exit status:
+ *
+ * <pre>
+ * ktool-rom-processor-exit-code: 0
+ * </pre>
+ *
+ * The port can be opened by any user of the machine, so only the requests
+ * with the secret are executed. It is generated each time the daemon starts
+ * and stored in a file that only the user can read (see
+ * {@link #getSecretFile(int)}).
+ *
+ * Requests are executed concurrently, each one printing its output in its own
+ * connection. Messages logged by the processor are printed by the daemon.
+ */
+public class Daemon {
+
+	public static final int DEFAULT_PORT = 12468;
+
+	public static final String EXIT_CODE_PREFIX = "ktool-rom-processor-exit-code: ";
+
+	private static final int REQUEST_TIMEOUT = 30000;
+
+	private final int port;
+	private final ProcessorCache cache = new ProcessorCache();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private byte[] secret;
+
+	public Daemon(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * @return the file where the secret of the daemon listening in a port is
+	 *         stored, ~/.ktool-rom-processor/daemon-PORT.secret
+	 */
+	public static Path getSecretFile(int port) {
+		return Paths.get(System.getProperty("user.home"),
+				".ktool-rom-processor", "daemon-" + port + ".secret");
+	}
+
+	public void run() throws IOException {
+
+		try (ServerSocket serverSocket = new ServerSocket(port, 50,
+				InetAddress.getLoopbackAddress())) {
+
+			final Path secretFile = getSecretFile(serverSocket.getLocalPort());
+			secret = createSecret(secretFile);
+
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						Files.deleteIfExists(secretFile);
+					} catch (IOException e) {
+						// The daemon is stopping anyway
+					}
+				}
+			});
+
+			System.out.println("Daemon listening on port "
+					+ serverSocket.getLocalPort() + " with secret in "
+					+ secretFile);
+
+			while (true) {
+				final Socket socket = serverSocket.accept();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try (Socket s = socket) {
+							execute(s);
+						} catch (IOException e) {
+							System.err.println("Error attending request: "
+									+ e.getMessage());
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Generates a new secret and writes it to a file that only the user can
+	 * read. The file is replaced if it exists.
+	 */
+	private static byte[] createSecret(Path secretFile) throws IOException {
+
+		String secret = new BigInteger(256, new SecureRandom()).toString(16);
+
+		Path folder = secretFile.getParent();
+		Files.deleteIfExists(secretFile);
+		try {
+			Files.createDirectories(folder, PosixFilePermissions
+					.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			Files.createFile(secretFile, PosixFilePermissions
+					.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system, where files in the home folder are
+			// private by default
+			Files.createDirectories(folder);
+			Files.createFile(secretFile);
+		}
+
+		Files.write(secretFile, secret.getBytes("US-ASCII"));
+
+		return secret.getBytes("US-ASCII");
+	}
+
+	private void execute(Socket socket) throws IOException {
+
+		Charset charset = Charset.defaultCharset();
+
+		// So a connection that doesn't send a request is closed
+		socket.setSoTimeout(REQUEST_TIMEOUT);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), charset));
+
+		String requestSecret = reader.readLine();
+		if (requestSecret == null
+				|| !MessageDigest.isEqual(secret,
+						requestSecret.getBytes("US-ASCII"))) {
+			System.err.println("Rejected request without the secret of the "
+					+ "daemon");
+			return;
+		}
+
+		String workingDir = reader.readLine();
+		if (workingDir == null) {
+			return;
+		}
+
+		List<String> args = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null && !line.isEmpty()) {
+			args.add(line);
+		}
+
+		PrintStream out = new PrintStream(socket.getOutputStream(), true,
+				charset.name());
+
+		int status;
+		try {
+			status = Main.run(Paths.get(workingDir),
+					args.toArray(new String[args.size()]), cache, out, out);
+		} catch (Throwable e) {
+			e.printStackTrace(out);
+			status = 1;
+		}
+
+		out.println(EXIT_CODE_PREFIX + status);
+		out.flush();
+	}
+}
@@ -0,0 +1,59 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Object wrapper that records the parts of the models read by a template.
+ * Every object of the model is wrapped by FreeMarker before a template can
+ * read it, so the parts of the models read during a render are the parts of
+ * the objects wrapped in the thread doing it.
+ */
+public class DependencyTrackingObjectWrapper extends DefaultObjectWrapper {
+
+	private static class Recording {
+		private final ModelFingerprint fingerprint;
+		private final Set<String> dependencyKeys = new TreeSet<String>();
+
+		Recording(ModelFingerprint fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	private final ThreadLocal<Recording> recording = new ThreadLocal<Recording>();
+
+	/**
+	 * Starts recording the objects wrapped in the current thread.
+	 */
+	public void startRecording(ModelFingerprint fingerprint) {
+		recording.set(new Recording(fingerprint));
+	}
+
+	/**
+	 * @return the dependency keys of the objects wrapped in the current thread
+	 *         since the recording was started
+	 */
+	public Set<String> stopRecording() {
+		Recording current = recording.get();
+		recording.remove();
+		return current.dependencyKeys;
+	}
+
+	@Override
+	public TemplateModel wrap(Object obj) throws TemplateModelException {
+
+		Recording current = recording.get();
+		if (current != null && obj != null) {
+			String key = current.fingerprint.getDependencyKey(obj);
+			if (key != null) {
+				current.dependencyKeys.add(key);
+			}
+		}
+
+		return super.wrap(obj);
+	}
+}
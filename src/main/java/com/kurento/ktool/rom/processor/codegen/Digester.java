@@ -0,0 +1,71 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes SHA-1 hashes of a sequence of values. Values are length-prefixed,
+ * so different sequences never produce the same input to the hash function.
+ */
+public class Digester {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final MessageDigest digest;
+
+	public Digester() {
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new KurentoRomProcessorException(
+					"SHA-1 is not available in this JVM", e);
+		}
+	}
+
+	public Digester add(String value) {
+		if (value == null) {
+			return add(-1);
+		}
+		return add(value.getBytes(UTF8));
+	}
+
+	public Digester add(byte[] value) {
+		add(value.length);
+		digest.update(value);
+		return this;
+	}
+
+	public Digester add(boolean value) {
+		digest.update((byte) (value ? 1 : 0));
+		return this;
+	}
+
+	public Digester add(int value) {
+		digest.update((byte) (value >>> 24));
+		digest.update((byte) (value >>> 16));
+		digest.update((byte) (value >>> 8));
+		digest.update((byte) value);
+		return this;
+	}
+
+	/**
+	 * Completes the hash computation. The digester can't be used after calling
+	 * this method.
+	 * 
+	 * @return the hash as an hexadecimal string
+	 */
+	public String digest() {
+		return toHex(digest.digest());
+	}
+
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,212 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Walks directory trees visiting each subdirectory in its own fork-join task,
+ * so wide trees are listed (or deleted) in parallel. Results are returned in
+ * the same order as a sequential walk: each directory before its entries, and
+ * entries in the order the directory lists them. Symbolic links are not
+ * followed.
+ */
+class DirectoryWalker {
+
+	private static final ConcurrentMap<String, PathMatcher> matchers = new ConcurrentHashMap<String, PathMatcher>();
+
+	private static ForkJoinPool pool;
+
+	/**
+	 * Finds the files and directories whose name matches a glob pattern.
+	 */
+	private static class FindTask extends RecursiveTask<List<Path>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path dir;
+		private final PathMatcher matcher;
+
+		FindTask(Path dir, PathMatcher matcher) {
+			this.dir = dir;
+			this.matcher = matcher;
+		}
+
+		@Override
+		protected List<Path> compute() {
+
+			List<Path> entries;
+			try {
+				entries = list(dir);
+			} catch (IOException e) {
+				System.err.println(e);
+				return Collections.emptyList();
+			}
+
+			List<Object> results = new ArrayList<Object>();
+			if (matches(matcher, dir)) {
+				results.add(dir);
+			}
+
+			for (Path entry : entries) {
+				if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+					results.add(new FindTask(entry, matcher).fork());
+				} else if (matches(matcher, entry)) {
+					results.add(entry);
+				}
+			}
+
+			List<Path> paths = new ArrayList<Path>();
+			for (Object result : results) {
+				if (result instanceof FindTask) {
+					paths.addAll(((FindTask) result).join());
+				} else {
+					paths.add((Path) result);
+				}
+			}
+			return paths;
+		}
+	}
+
+	/**
+	 * Deletes a tree, except the paths in the no delete list. The result is
+	 * true if the tree has been deleted completely.
+	 */
+	private static class DeleteTask extends RecursiveTask<Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path basePath;
+		private final Path path;
+		private final List<String> noDeleteFiles;
+
+		DeleteTask(Path basePath, Path path, List<String> noDeleteFiles) {
+			this.basePath = basePath;
+			this.path = path;
+			this.noDeleteFiles = noDeleteFiles;
+		}
+
+		@Override
+		protected Boolean compute() {
+			try {
+				return delete();
+			} catch (IOException e) {
+				throw new KurentoRomProcessorException("Error deleting "
+						+ path, e);
+			}
+		}
+
+		private boolean delete() throws IOException {
+
+			if (noDeleteFiles.contains(basePath.relativize(path).toString())) {
+				return false;
+			}
+
+			if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				Files.delete(path);
+				return true;
+			}
+
+			List<DeleteTask> tasks = new ArrayList<DeleteTask>();
+			for (Path entry : list(path)) {
+				tasks.add(new DeleteTask(basePath, entry, noDeleteFiles));
+			}
+			invokeAll(tasks);
+
+			boolean empty = true;
+			for (DeleteTask task : tasks) {
+				empty &= task.join();
+			}
+
+			if (empty) {
+				try {
+					Files.delete(path);
+				} catch (DirectoryNotEmptyException e) {
+					// Something has been created meanwhile
+					return false;
+				}
+			}
+			return empty;
+		}
+	}
+
+	/**
+	 * @return the paths of the tree whose names match the glob pattern,
+	 *         including the root directory
+	 */
+	static List<Path> find(Path dir, String globPattern) {
+		return getPool().invoke(new FindTask(dir, getMatcher(globPattern)));
+	}
+
+	/**
+	 * Deletes a file or a tree, keeping the paths in the no delete list, that
+	 * are relative to the base path, and the directories that contain them.
+	 */
+	static void delete(Path basePath, Path path, List<String> noDeleteFiles)
+			throws IOException {
+		try {
+			getPool().invoke(new DeleteTask(basePath, path, noDeleteFiles));
+		} catch (KurentoRomProcessorException e) {
+			// The exception may have been copied from the thread of the task
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a matcher of the default file system for a glob pattern.
+	 *         Matchers are cached, as the same few patterns are used again and
+	 *         again.
+	 */
+	static PathMatcher getMatcher(String globPattern) {
+		PathMatcher matcher = matchers.get(globPattern);
+		if (matcher == null) {
+			matcher = FileSystems.getDefault().getPathMatcher(
+					"glob:" + globPattern);
+			matchers.putIfAbsent(globPattern, matcher);
+		}
+		return matcher;
+	}
+
+	private static boolean matches(PathMatcher matcher, Path path) {
+		Path name = path.getFileName();
+		return name != null && matcher.matches(name);
+	}
+
+	private static List<Path> list(Path dir) throws IOException {
+		List<Path> entries = new ArrayList<Path>();
+		try (DirectoryStream<Path> directoryStream = Files
+				.newDirectoryStream(dir)) {
+			for (Path entry : directoryStream) {
+				entries.add(entry);
+			}
+		} catch (DirectoryIteratorException e) {
+			throw e.getCause();
+		}
+		return entries;
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+}
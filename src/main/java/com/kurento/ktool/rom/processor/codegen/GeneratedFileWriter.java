@@ -0,0 +1,498 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Receives the output of a template and writes the file it generates. The
+ * first word of the output is the name of the file and the content starts
+ * after the char that follows the name, as it has always been parsed.
+ *
+ * The content is encoded and hashed while the template is rendered, so the
+ * output is never kept as a whole string. If there isn't a file with the same
+ * name, the content is written directly to a temporary file next to it.
+ * Otherwise, it is kept in a pooled buffer until it is known if it has
+ * changed, unless it is too big. The temporary file is moved into place when
+ * the file is committed. Temporary files left by a generation that didn't
+ * finish are deleted by a later one (see {@link #deleteTempFiles(Path)}).
+ *
+ * In memory mode, the content is always kept in the buffer and the file
+ * system is never accessed. With a staging path, the output path is only a
+ * name: the content is kept in the buffer too, unless it is too big, and then
+ * it is written to a temporary file next to the staging path.
+ */
+class GeneratedFileWriter extends Writer {
+
+	private static final String DELIMITERS = " \t\n\r\f";
+	private static final int MAX_BUFFERED_SIZE = 1024 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 16;
+	private static final int MAX_POOLED_CAPACITY = 2 * MAX_BUFFERED_SIZE;
+
+	private static final Pattern TEMP_FILE_PATTERN = Pattern
+			.compile("\\..+\\.[0-9a-f]{1,16}\\.tmp");
+
+	// Generations running concurrently in the same folder modify their
+	// temporary files more recently than this
+	private static final long STALE_TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+	private static final Queue<ContentBuffer> bufferPool = new ConcurrentLinkedQueue<ContentBuffer>();
+
+	private static class ContentBuffer extends ByteArrayOutputStream {
+
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * Buffers the content and moves it to a temporary file when it is too
+	 * big.
+	 */
+	private class ContentStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (buffer != null && !inMemory
+					&& buffer.size() + len > MAX_BUFFERED_SIZE) {
+				openTempFile();
+				tempFileStream.write(buffer.getBuffer(), 0, buffer.size());
+				releaseBuffer();
+			}
+
+			if (buffer != null) {
+				buffer.write(b, off, len);
+			} else if (tempFileStream != null) {
+				tempFileStream.write(b, off, len);
+			}
+		}
+	}
+
+	private final Path outputFolder;
+	private final boolean overwrite;
+	private final boolean inMemory;
+	private final Path stagingPath;
+	private final StringBuilder header = new StringBuilder();
+	private final StringBuilder sourceCode;
+	private int nameStart = -1;
+	private int scanned;
+
+	private String fileName;
+	private Path outputFile;
+	private boolean discarded;
+	private ContentBuffer buffer;
+	private Path tempFile;
+	private OutputStream tempFileStream;
+	private MessageDigest digest;
+	private Writer content;
+	private String hash;
+
+	/**
+	 * @param keepSourceCode
+	 *            if the content has to be kept to be printed
+	 * @param inMemory
+	 *            if the content has to be kept in memory instead of being
+	 *            written to the output folder
+	 * @param stagingPath
+	 *            file next to which the content is written when it is too big
+	 *            to be kept in the buffer, instead of next to the output file,
+	 *            or null
+	 */
+	GeneratedFileWriter(Path outputFolder, boolean overwrite,
+			boolean keepSourceCode, boolean inMemory, Path stagingPath) {
+		this.outputFolder = outputFolder;
+		this.overwrite = overwrite;
+		this.inMemory = inMemory;
+		this.stagingPath = stagingPath;
+		this.sourceCode = keepSourceCode ? new StringBuilder() : null;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+
+		if (content != null) {
+			writeContent(cbuf, off, len);
+			return;
+		}
+
+		header.append(cbuf, off, len);
+
+		for (; scanned < header.length(); scanned++) {
+			boolean delimiter = DELIMITERS.indexOf(header.charAt(scanned)) != -1;
+			if (nameStart < 0) {
+				if (!delimiter) {
+					nameStart = scanned;
+				}
+			} else if (delimiter) {
+				// The name is complete when a delimiter is found after it
+				startContent(header.substring(nameStart, scanned));
+				return;
+			}
+		}
+	}
+
+	private void startContent(String fileName) throws IOException {
+
+		this.fileName = fileName;
+		this.outputFile = outputFolder.resolve(fileName);
+
+		boolean exists = !inMemory && stagingPath == null
+				&& Files.exists(outputFile);
+		if (inMemory || stagingPath != null || exists && overwrite) {
+			buffer = bufferPool.poll();
+			if (buffer == null) {
+				buffer = new ContentBuffer();
+			}
+		} else if (exists) {
+			discarded = true;
+		} else {
+			openTempFile();
+		}
+
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new KurentoRomProcessorException(
+					"SHA-1 is not available in this JVM", e);
+		}
+
+		// Generated files are written in the default charset
+		content = new OutputStreamWriter(new DigestOutputStream(
+				new ContentStream(), digest), Charset.defaultCharset());
+
+		int contentStart = fileName.length() + 1;
+		if (contentStart < header.length()) {
+			char[] chars = header.substring(contentStart).toCharArray();
+			writeContent(chars, 0, chars.length);
+		}
+		header.setLength(0);
+		header.trimToSize();
+	}
+
+	private void writeContent(char[] cbuf, int off, int len)
+			throws IOException {
+		content.write(cbuf, off, len);
+		if (sourceCode != null) {
+			sourceCode.append(cbuf, off, len);
+		}
+	}
+
+	private void openTempFile() throws IOException {
+
+		if (discarded) {
+			return;
+		}
+
+		Path file = stagingPath != null ? stagingPath : outputFile;
+		Files.createDirectories(file.getParent());
+
+		while (tempFile == null) {
+			Path path = createTempFileName(file);
+			try {
+				// Not created as a temporary file, so it gets the default
+				// permissions of new files
+				tempFileStream = new BufferedOutputStream(
+						Files.newOutputStream(path,
+								StandardOpenOption.CREATE_NEW,
+								StandardOpenOption.WRITE));
+				tempFile = path;
+			} catch (FileAlreadyExistsException e) {
+				// Try another name
+			}
+		}
+	}
+
+	/**
+	 * @return a random name for a temporary file next to a file, as
+	 *         ".name.1f2e3d4c5b6a7988.tmp"
+	 */
+	static Path createTempFileName(Path file) {
+		return file.resolveSibling("." + file.getFileName() + "."
+				+ Long.toHexString(ThreadLocalRandom.current().nextLong())
+				+ ".tmp");
+	}
+
+	/**
+	 * @return if a temporary file hasn't been modified for long enough to be
+	 *         sure that the generation that created it is not running
+	 */
+	static boolean isStaleTempFile(Path file) {
+
+		if (!TEMP_FILE_PATTERN.matcher(file.getFileName().toString())
+				.matches()) {
+			return false;
+		}
+
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file,
+					BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			return attributes.isRegularFile()
+					&& System.currentTimeMillis()
+							- attributes.lastModifiedTime().toMillis() > STALE_TEMP_FILE_AGE;
+		} catch (IOException e) {
+			// Moved into place or deleted by the generation that created it
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes the temporary files of a folder and its subfolders that were
+	 * left by generations that didn't finish, as when the process is killed.
+	 * Recent temporary files are kept, as they can belong to a generation
+	 * running in the same folder (see {@link #isStaleTempFile(Path)}).
+	 *
+	 * @return the temporary files deleted
+	 */
+	static List<Path> deleteTempFiles(Path folder) throws IOException {
+		List<Path> deletedFiles = new ArrayList<Path>();
+		for (Path file : PathUtils.searchFiles(folder, ".*.tmp")) {
+			if (isStaleTempFile(file) && Files.deleteIfExists(file)) {
+				deletedFiles.add(file);
+			}
+		}
+		return deletedFiles;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		// Content is only written to its file when it is complete
+	}
+
+	/**
+	 * Completes the content. It has to be called once the template has been
+	 * rendered.
+	 *
+	 * @throws KurentoRomProcessorException
+	 *             if the output has no file name or no content after it
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if (content == null) {
+			if (header.length() == 0) {
+				return;
+			}
+
+			// Output is only one word. As content starts after the length of
+			// the name plus one char, there is (empty) content only if there
+			// are blanks before the name.
+			if (nameStart <= 0) {
+				throw new KurentoRomProcessorException(
+						"The output of a template has to start with the name "
+								+ "of the generated file followed by its content");
+			}
+			startContent(header.substring(nameStart));
+		}
+
+		if (hash == null) {
+			content.close();
+			hash = Digester.toHex(digest.digest());
+			if (tempFileStream != null) {
+				tempFileStream.close();
+			}
+		}
+	}
+
+	/**
+	 * @return if the template generated nothing
+	 */
+	boolean isEmpty() {
+		return content == null && header.length() == 0;
+	}
+
+	String getFileName() {
+		return fileName;
+	}
+
+	Path getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * @return the normalized path of the output file, with '/' as separator
+	 *         in every platform
+	 */
+	String getOutputPath() {
+		String separator = outputFile.getFileSystem().getSeparator();
+		return outputFile.normalize().toString().replace(separator, "/");
+	}
+
+	/**
+	 * @return the SHA-1 of the content, as an hexadecimal string
+	 */
+	String getHash() {
+		return hash;
+	}
+
+	String getSourceCode() {
+		return sourceCode != null ? sourceCode.toString() : null;
+	}
+
+	/**
+	 * @return if the content is the same as the one of the given file
+	 */
+	boolean contentEquals(Path file) throws IOException {
+		if (buffer != null) {
+			return MappedFiles.contentEquals(file, buffer.getBuffer(),
+					buffer.size());
+		}
+		return tempFile != null && MappedFiles.contentEquals(file, tempFile);
+	}
+
+	/**
+	 * Writes the content to a temporary file, if it is still buffered, so it
+	 * can be kept until it is committed without holding the buffer. In memory
+	 * mode or with a staging path, the content is kept in the buffer.
+	 */
+	void stage() throws IOException {
+
+		if (buffer != null && !inMemory && stagingPath == null) {
+			openTempFileForBuffer();
+		}
+
+		if (buffer == null && tempFile == null) {
+			throw new IllegalStateException("Content of file '" + fileName
+					+ "' has been discarded");
+		}
+	}
+
+	/**
+	 * @return a copy of the content
+	 */
+	byte[] getContent() throws IOException {
+		stage();
+		if (buffer != null) {
+			return Arrays.copyOf(buffer.getBuffer(), buffer.size());
+		} else {
+			return Files.readAllBytes(tempFile);
+		}
+	}
+
+	/**
+	 * Copies the content to a stream.
+	 */
+	void writeContentTo(OutputStream out) throws IOException {
+		stage();
+		if (buffer != null) {
+			out.write(buffer.getBuffer(), 0, buffer.size());
+		} else {
+			Files.copy(tempFile, out);
+		}
+	}
+
+	/**
+	 * Forces the staged content to be written to disk.
+	 */
+	void sync() throws IOException {
+		stage();
+		try (FileChannel channel = FileChannel.open(tempFile,
+				StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Moves the content into the output file, replacing it if it exists.
+	 */
+	void commit() throws IOException {
+
+		if (inMemory || stagingPath != null) {
+			throw new IllegalStateException("Content of file '" + fileName
+					+ "' is not written to its output path");
+		}
+
+		stage();
+
+		if (Files.exists(outputFile)) {
+			copyPermissions(outputFile, tempFile);
+		}
+
+		try {
+			Files.move(tempFile, outputFile,
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile, outputFile,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		tempFile = null;
+	}
+
+	private void openTempFileForBuffer() throws IOException {
+		ContentBuffer content = buffer;
+		buffer = null;
+		openTempFile();
+		try {
+			tempFileStream.write(content.getBuffer(), 0, content.size());
+			tempFileStream.close();
+		} finally {
+			buffer = content;
+			releaseBuffer();
+		}
+	}
+
+	/**
+	 * Releases the content without writing it, if it hasn't been committed.
+	 */
+	void discard() throws IOException {
+		releaseBuffer();
+		if (tempFileStream != null) {
+			tempFileStream.close();
+		}
+		if (tempFile != null) {
+			Files.deleteIfExists(tempFile);
+			tempFile = null;
+		}
+	}
+
+	private void releaseBuffer() {
+		if (buffer != null) {
+			buffer.reset();
+			if (bufferPool.size() < MAX_POOLED_BUFFERS
+					&& buffer.getBuffer().length <= MAX_POOLED_CAPACITY) {
+				bufferPool.offer(buffer);
+			}
+			buffer = null;
+		}
+	}
+
+	private static void copyPermissions(Path from, Path to) throws IOException {
+		PosixFileAttributeView fromView = Files.getFileAttributeView(from,
+				PosixFileAttributeView.class);
+		PosixFileAttributeView toView = Files.getFileAttributeView(to,
+				PosixFileAttributeView.class);
+		if (fromView != null && toView != null) {
+			toView.setPermissions(fromView.readAttributes().permissions());
+		}
+	}
+}
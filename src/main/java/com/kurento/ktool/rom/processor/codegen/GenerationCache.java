@@ -0,0 +1,299 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Persistent cache of the files generated in a codegen dir. Each render of a
+ * template is identified by a key computed from the template files, the config
+ * and the tool version. Besides, the parts of the models read by each render
+ * are recorded with their fingerprints (see {@link ModelFingerprint}). When
+ * the key of a render is the same as in the previous run, none of the parts of
+ * the models it read has changed and the files it generated haven't been
+ * modified, the render can be skipped.
+ *
+ * Each target generated in a codegen dir has its own cache, as renders of
+ * templates with the same name in different targets are not related.
+ */
+public class GenerationCache {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(GenerationCache.class);
+
+	private static final String CACHE_FILE_PREFIX = ".ktool-rom-processor.";
+	private static final String CACHE_FILE_SUFFIX = ".cache";
+
+	private static final int FORMAT_VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static class CachedFile {
+		long size;
+		long lastModified;
+	}
+
+	private static class Entry {
+		String key;
+		Map<String, String> dependencies = new TreeMap<>();
+		Map<String, CachedFile> files = new LinkedHashMap<>();
+	}
+
+	private static class CacheContent {
+		int version;
+		String toolVersion;
+		Map<String, Entry> entries = new HashMap<>();
+	}
+
+	private static String knownToolVersion;
+	private static boolean toolVersionComputed;
+
+	private final Path outputFolder;
+	private final Path cacheFile;
+	private final Map<String, Entry> previousEntries;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Gson gson = new GsonBuilder().create();
+
+	private GenerationCache(Path outputFolder, Path cacheFile,
+			Map<String, Entry> previousEntries) {
+		this.outputFolder = outputFolder;
+		this.cacheFile = cacheFile;
+		this.previousEntries = previousEntries;
+	}
+
+	/**
+	 * Loads the cache of a target stored in a codegen dir. If there isn't a
+	 * cache or it can't be used, an empty one is returned.
+	 * 
+	 * @param templatesId
+	 *            identifier of the templates of the target (see
+	 *            {@link GenerationTarget#getTemplatesId()})
+	 */
+	public static GenerationCache load(Path outputFolder, String templatesId) {
+
+		Map<String, Entry> previousEntries = Collections.emptyMap();
+		Path cacheFile = outputFolder.resolve(CACHE_FILE_PREFIX + templatesId
+				+ CACHE_FILE_SUFFIX);
+
+		String toolVersion = getToolVersion();
+		if (toolVersion != null && Files.exists(cacheFile)) {
+			try (Reader reader = Files.newBufferedReader(cacheFile, UTF8)) {
+				CacheContent content = new Gson().fromJson(reader,
+						CacheContent.class);
+				if (content != null && content.version == FORMAT_VERSION
+						&& toolVersion.equals(content.toolVersion)
+						&& content.entries != null) {
+					previousEntries = content.entries;
+				}
+			} catch (IOException | JsonParseException e) {
+				log.debug("Ignoring generation cache " + cacheFile + ": "
+						+ e.getMessage());
+			}
+		}
+
+		return new GenerationCache(outputFolder, cacheFile, previousEntries);
+	}
+
+	/**
+	 * @return the version of the tool, or null if it can't be known. In that
+	 *         case previous caches are never used.
+	 */
+	public static synchronized String getToolVersion() {
+		if (!toolVersionComputed) {
+			knownToolVersion = computeToolVersion();
+			toolVersionComputed = true;
+		}
+		return knownToolVersion;
+	}
+
+	private static String computeToolVersion() {
+
+		String version = GenerationCache.class.getPackage()
+				.getImplementationVersion();
+		if (version != null && !version.endsWith("-SNAPSHOT")) {
+			return version;
+		}
+
+		// Outside a released jar the version doesn't change with the code, so
+		// the code itself identifies the tool
+		try {
+			CodeSource codeSource = GenerationCache.class.getProtectionDomain()
+					.getCodeSource();
+			if (codeSource != null && codeSource.getLocation() != null) {
+				Path location = Paths.get(codeSource.getLocation().toURI());
+				return (version != null ? version : "unknown") + "-"
+						+ digestCode(location);
+			}
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			log.debug("Can't compute the digest of the tool code: "
+					+ e.getMessage());
+		}
+
+		log.debug("Unknown tool version, generation caches will be ignored");
+		return null;
+	}
+
+	private static String digestCode(Path location) throws IOException {
+
+		Digester digester = new Digester();
+		if (!Files.isDirectory(location)) {
+			return digester.add(Files.readAllBytes(location)).digest();
+		}
+
+		final List<Path> classFiles = new ArrayList<>();
+		Files.walkFileTree(location, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) {
+				if (file.getFileName().toString().endsWith(".class")) {
+					classFiles.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(classFiles);
+
+		for (Path classFile : classFiles) {
+			digester.add(location.relativize(classFile).toString());
+			digester.add(Files.readAllBytes(classFile));
+		}
+		return digester.digest();
+	}
+
+	/**
+	 * Computes the key of a render. The version of the tool is always part of
+	 * the key.
+	 */
+	public static String createKey(String... inputs) {
+		Digester digester = new Digester();
+		digester.add(FORMAT_VERSION);
+		digester.add(getToolVersion());
+		for (String input : inputs) {
+			digester.add(input);
+		}
+		return digester.digest();
+	}
+
+	/**
+	 * Looks for a previous render with the same key, whose dependencies have
+	 * the same fingerprints and whose generated files haven't been modified
+	 * since then. In that case the render is kept in the cache.
+	 * 
+	 * @return the names of the files generated by the render, or null if the
+	 *         render has to be done again
+	 */
+	public List<String> getUpToDateFiles(String id, String key,
+			ModelFingerprint fingerprint) {
+
+		Entry entry = previousEntries.get(id);
+		if (entry == null || !entry.key.equals(key)
+				|| entry.dependencies == null) {
+			return null;
+		}
+
+		for (Map.Entry<String, String> dependency : entry.dependencies
+				.entrySet()) {
+			if (!dependency.getValue().equals(
+					fingerprint.getFingerprint(dependency.getKey()))) {
+				return null;
+			}
+		}
+
+		for (Map.Entry<String, CachedFile> file : entry.files.entrySet()) {
+			Path path = outputFolder.resolve(file.getKey());
+			try {
+				if (!Files.exists(path)
+						|| Files.size(path) != file.getValue().size
+						|| Files.getLastModifiedTime(path).toMillis() != file
+								.getValue().lastModified) {
+					return null;
+				}
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		entries.put(id, entry);
+		return new ArrayList<String>(entry.files.keySet());
+	}
+
+	/**
+	 * Stores the result of a render.
+	 * 
+	 * @param dependencies
+	 *            fingerprints of the parts of the models read by the render
+	 * @param fileNames
+	 *            files generated by the render, relative to the codegen dir
+	 */
+	public void update(String id, String key, Map<String, String> dependencies,
+			List<String> fileNames) throws IOException {
+
+		Entry entry = new Entry();
+		entry.key = key;
+		entry.dependencies.putAll(dependencies);
+
+		for (String fileName : fileNames) {
+			Path path = outputFolder.resolve(fileName);
+			if (Files.exists(path)) {
+				CachedFile file = new CachedFile();
+				file.size = Files.size(path);
+				file.lastModified = Files.getLastModifiedTime(path).toMillis();
+				entry.files.put(fileName, file);
+			} else {
+				// Not generated (no-overwrite), so it can't be cached
+				return;
+			}
+		}
+
+		entries.put(id, entry);
+	}
+
+	/**
+	 * Writes the cache of the target to the codegen dir. Only the renders done or reused
+	 * since the cache was loaded are kept.
+	 */
+	public void save() throws IOException {
+
+		CacheContent content = new CacheContent();
+		content.version = FORMAT_VERSION;
+		content.toolVersion = getToolVersion();
+		content.entries = new TreeMap<String, Entry>(entries);
+
+		Path tempFile = Files.createTempFile(outputFolder, cacheFile
+				.getFileName().toString(), ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile, UTF8)) {
+				gson.toJson(content, writer);
+			}
+			Files.move(tempFile, cacheFile,
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.nio.file.Path;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A set of templates applied to the loaded models, generating code in its own
+ * directory with its own configuration. Several targets can be generated from
+ * a single load of the kmd files.
+ */
+public class GenerationTarget {
+
+	private final Path templatesDir;
+	private final String internalTemplates;
+	private final Path codegenDir;
+	private final JsonObject config;
+
+	private GenerationTarget(Path templatesDir, String internalTemplates,
+			Path codegenDir, JsonObject config) {
+		this.templatesDir = templatesDir;
+		this.internalTemplates = internalTemplates;
+		this.codegenDir = codegenDir;
+		this.config = config;
+	}
+
+	/**
+	 * @param config
+	 *            configuration of this target. If null, the configuration of
+	 *            the processor is used.
+	 */
+	public static GenerationTarget fromTemplatesDir(Path templatesDir,
+			Path codegenDir, JsonObject config) {
+		return new GenerationTarget(templatesDir, null, codegenDir, config);
+	}
+
+	/**
+	 * @param config
+	 *            configuration of this target. If null, the configuration of
+	 *            the processor is used.
+	 */
+	public static GenerationTarget fromInternalTemplates(
+			String internalTemplates, Path codegenDir, JsonObject config) {
+		return new GenerationTarget(null, internalTemplates, codegenDir, config);
+	}
+
+	public Path getTemplatesDir() {
+		return templatesDir;
+	}
+
+	public String getInternalTemplates() {
+		return internalTemplates;
+	}
+
+	public Path getCodegenDir() {
+		return codegenDir;
+	}
+
+	public JsonObject getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return an identifier of the templates of this target, used to keep
+	 *         apart the records of the targets generated in the same codegen
+	 *         dir
+	 */
+	public String getTemplatesId() {
+		String templates = internalTemplates != null ? "internal:"
+				+ internalTemplates : templatesDir.toAbsolutePath().normalize()
+				.toString();
+		return new Digester().add(templates).digest().substring(0, 12);
+	}
+
+	@Override
+	public String toString() {
+		return (internalTemplates != null ? internalTemplates : templatesDir)
+				+ " -> " + codegenDir;
+	}
+}
@@ -56,7 +56,7 @@ public class JsonObjectAsMap {
 		}
 
 		if (value instanceof JsonObject) {
-			return createObjectFromJsonElement(value);
+			return createMapFromJsonObject((JsonObject) value);
 		}
 
 		throw new RuntimeException("Unrecognized json element: " + value);
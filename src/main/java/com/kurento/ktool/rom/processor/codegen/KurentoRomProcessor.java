@@ -3,16 +3,27 @@ package com.kurento.ktool.rom.processor.codegen;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.Method;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,9 +36,12 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
+import com.kurento.ktool.rom.processor.binary.BinaryModelSaverLoader;
 import com.kurento.ktool.rom.processor.json.JsonModelSaverLoader;
 import com.kurento.ktool.rom.processor.model.Model;
 
+import freemarker.template.TemplateException;
+
 public class KurentoRomProcessor {
 
 	private static final Logger log = LoggerFactory
@@ -39,6 +53,8 @@ public class KurentoRomProcessor {
 	private JsonObject config = new JsonObject();
 	private Path templatesDir;
 	private boolean verbose;
+	private PrintStream out = System.out;
+	private PrintStream err = System.err;
 	private boolean deleteGenDir;
 	private boolean overwrite;
 	private List<Path> dependencyKmdFiles = new ArrayList<Path>();
@@ -48,10 +64,222 @@ public class KurentoRomProcessor {
 	private boolean listGeneratedFiles = false;
 	private String internalTemplates = null;
 	private Path outputModelFile = null;
+	private Path binaryOutputModelDir = null;
 	private boolean hasToGenerateCode = true;
+	private int threads = 1;
+	private boolean incremental;
+	private boolean fsync;
+	private boolean prune;
+	private boolean inMemory;
+	private ProcessorCache cache;
+
+	private List<GenerationTarget> targets = new ArrayList<GenerationTarget>();
 
 	private ModelManager modelManager;
 	private ModelManager depModelManager;
+	private LoadedModels previousModels;
+	private LoadedModels loadedModels;
+
+	/**
+	 * Resolved models of a generation, that can be reused by the next one
+	 * while none of their kmd files changes (see
+	 * {@link KurentoRomProcessor#setPreviousModels(LoadedModels)}).
+	 */
+	public static class LoadedModels {
+
+		private final List<List<String>> kmdFilesKey;
+		private final ModelManager modelManager;
+		private final boolean hasToGenerateCode;
+
+		private LoadedModels(List<List<String>> kmdFilesKey,
+				ModelManager modelManager, boolean hasToGenerateCode) {
+			this.kmdFilesKey = kmdFilesKey;
+			this.modelManager = modelManager;
+			this.hasToGenerateCode = hasToGenerateCode;
+		}
+	}
+
+	/**
+	 * Generates the code of a target, once its templates and configuration
+	 * have been located.
+	 */
+	private class TargetGenerator implements Callable<Void> {
+
+		private final Path templatesDir;
+		private final String templatesId;
+		private final Path codegenDir;
+		private final JsonObject config;
+		private final Map<String, byte[]> generatedFiles;
+		private final ForkJoinPool renderPool;
+
+		/**
+		 * @param generatedFiles
+		 *            map where files are put, instead of writing them, in
+		 *            memory mode. Otherwise, null.
+		 * @param renderPool
+		 *            pool where templates are rendered, shared by all the
+		 *            targets, or null to render them in the calling thread
+		 */
+		TargetGenerator(GenerationTarget target,
+				Map<String, byte[]> generatedFiles, ForkJoinPool renderPool)
+				throws IOException {
+
+			Path targetTemplatesDir = target.getTemplatesDir();
+			JsonObject targetConfig = target.getConfig() != null ? target
+					.getConfig() : KurentoRomProcessor.this.config;
+
+			if (target.getInternalTemplates() != null) {
+				targetTemplatesDir = getInternalTemplatesDir(target
+						.getInternalTemplates());
+
+				Path configFile = targetTemplatesDir.resolve(CONFIG_FILE_NAME);
+
+				if (Files.exists(configFile)) {
+					JsonObject internalConfig = loadConfigFile(configFile);
+					overrideConfig(internalConfig, targetConfig);
+					targetConfig = internalConfig;
+				}
+			}
+
+			this.templatesDir = targetTemplatesDir;
+			this.templatesId = templatesDir != null ? target.getTemplatesId()
+					: null;
+			this.codegenDir = target.getCodegenDir();
+			this.config = targetConfig;
+			this.generatedFiles = generatedFiles;
+			this.renderPool = renderPool;
+		}
+
+		/**
+		 * Deletes the temporary files left in the codegen dir (or next to the
+		 * archive) by a previous generation that didn't finish.
+		 */
+		void deleteTempFiles() throws IOException {
+			if (generatedFiles != null || codegenDir == null) {
+				return;
+			}
+
+			ArchiveOutput archive = ArchiveOutput.create(codegenDir, fsync);
+			if (archive != null) {
+				archive.deleteTempFiles();
+			} else if (Files.isDirectory(codegenDir)) {
+				for (Path file : GeneratedFileWriter
+						.deleteTempFiles(codegenDir)) {
+					log.debug("Deleted temporary file " + file);
+				}
+			}
+		}
+
+		boolean expandsMethodsWithOpsParams() {
+			return config.has("expandMethodsWithOpsParams")
+					&& config.get("expandMethodsWithOpsParams").getAsBoolean();
+		}
+
+		@Override
+		public Void call() throws IOException, TemplateException {
+
+			// Files kept in memory or in an archive are always generated from
+			// scratch, so there is nothing to delete, compare or skip
+			OutputTransaction transaction = null;
+			Path outputDir = codegenDir;
+			if (generatedFiles != null) {
+				transaction = new MemoryOutput(generatedFiles);
+				if (outputDir == null) {
+					outputDir = Paths.get("");
+				}
+			} else if (codegenDir != null) {
+				ArchiveOutput archive = ArchiveOutput.create(codegenDir, fsync);
+				if (archive != null) {
+					transaction = archive;
+					outputDir = archive.getFolder();
+				}
+			}
+			boolean onDisk = transaction == null;
+
+			if (deleteGenDir && onDisk) {
+				PathUtils.delete(codegenDir, loadNoDeleteFiles(config));
+			}
+
+			if (codegenDir != null && onDisk && !Files.exists(codegenDir)) {
+				Files.createDirectories(codegenDir);
+			}
+
+			CodeGen codeGen;
+			if (cache != null && templatesDir != null) {
+				codeGen = new CodeGen(cache.getConfiguration(templatesDir),
+						templatesDir, outputDir, verbose, listGeneratedFiles,
+						overwrite, config, threads);
+			} else {
+				codeGen = new CodeGen(templatesDir, outputDir, verbose,
+						listGeneratedFiles, overwrite, config, threads);
+			}
+
+			GenerationCache generationCache = null;
+			if (incremental && !verbose && templatesDir != null
+					&& codegenDir != null && onDisk) {
+				generationCache = GenerationCache.load(codegenDir, templatesId);
+				codeGen.setCache(generationCache);
+			}
+
+			// Plain generations don't leave records in the codegen dir
+			OutputManifest manifest = null;
+			if ((incremental || prune) && templatesDir != null
+					&& codegenDir != null && onDisk) {
+				manifest = OutputManifest.load(codegenDir, templatesId);
+				codeGen.setManifest(manifest);
+			}
+
+			if (onDisk) {
+				transaction = new OutputTransaction(manifest, generationCache,
+						fsync);
+			}
+			codeGen.setTransaction(transaction);
+			codeGen.setRenderPool(renderPool);
+			codeGen.setOut(out);
+
+			try {
+				for (Model model : modelManager.getModels()) {
+					if (templatesDir != null && outputDir != null) {
+						codeGen.generateCode(model);
+					}
+				}
+				transaction.commit();
+			} finally {
+				transaction.rollback();
+			}
+
+			if (manifest != null) {
+				if (prune) {
+					pruneOrphanedFiles(manifest);
+				} else {
+					manifest.keepOrphanedFiles();
+				}
+			}
+
+			if (generationCache != null) {
+				generationCache.save();
+			}
+
+			if (manifest != null) {
+				manifest.save();
+			}
+
+			return null;
+		}
+
+		private void pruneOrphanedFiles(OutputManifest manifest)
+				throws IOException {
+
+			List<String> deletedFiles = PathUtils.deleteFiles(codegenDir,
+					manifest.getOrphanedFiles(), loadNoDeleteFiles(config));
+
+			if (listGeneratedFiles) {
+				for (String fileName : deletedFiles) {
+					out.println("Deleted file:\t" + fileName);
+				}
+			}
+		}
+	}
 
 	public void setInternalTemplates(String internalTemplates) {
 		this.internalTemplates = internalTemplates;
@@ -89,6 +317,22 @@ public class KurentoRomProcessor {
 		this.templatesDir = templatesDir;
 	}
 
+	/**
+	 * Sets the stream where generated files and other messages are printed,
+	 * instead of {@link System#out}.
+	 */
+	public void setOut(PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Sets the stream where unexpected errors are printed, instead of
+	 * {@link System#err}.
+	 */
+	public void setErr(PrintStream err) {
+		this.err = err;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
@@ -113,10 +357,89 @@ public class KurentoRomProcessor {
 		this.overwrite = overwrite;
 	}
 
+	/**
+	 * Adds a target to be generated. When targets are added, the templates,
+	 * codegen dir and internal templates set in the processor are ignored and
+	 * the models are generated for each target instead.
+	 */
+	public void addTarget(GenerationTarget target) {
+		this.targets.add(target);
+	}
+
+	/**
+	 * In incremental mode, a cache and an output manifest are stored in each
+	 * codegen dir and the templates whose inputs (models, templates, config
+	 * and tool version) haven't changed since the previous generation are not
+	 * rendered again.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Sets the cache used to reuse templates and dependency models loaded by
+	 * previous executions in the same JVM.
+	 */
+	public void setCache(ProcessorCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * In memory mode, generated files are not written to the codegen dirs,
+	 * but returned in the result of the generation (see
+	 * {@link Result#getGeneratedFiles()}). A codegen dir is not needed in this
+	 * mode: without it, files are named relative to it.
+	 */
+	public void setInMemory(boolean inMemory) {
+		this.inMemory = inMemory;
+	}
+
+	/**
+	 * In prune mode, the files generated by the previous generation of each
+	 * target (as recorded in its output manifest in the codegen dir) that
+	 * haven't been generated again are deleted, except the ones in the
+	 * no_delete list of the config. Other files, including the ones generated
+	 * by other targets in the same dir, are not touched, unlike when the
+	 * codegen dir is deleted.
+	 */
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
+	/**
+	 * If generated files have to be synced to disk before the generation of
+	 * each codegen dir finishes. It is done once for all the files of the dir.
+	 */
+	public void setFsync(boolean fsync) {
+		this.fsync = fsync;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	public boolean hasToGenerateCode() {
 		return hasToGenerateCode;
 	}
 
+	/**
+	 * Sets the models loaded by a previous generation with the same kmd files,
+	 * so they are used instead of loading and resolving them again if none of
+	 * the files has changed since then. They can't be used by a generation
+	 * running at the same time.
+	 */
+	public void setPreviousModels(LoadedModels previousModels) {
+		this.previousModels = previousModels;
+	}
+
+	/**
+	 * @return the models used by the last generation, or null if they haven't
+	 *         been loaded
+	 */
+	public LoadedModels getLoadedModels() {
+		return loadedModels;
+	}
+
 	private Path getInternalTemplatesDir(String internalTemplates)
 			throws IOException {
 
@@ -147,43 +470,67 @@ public class KurentoRomProcessor {
 			loadModelsFromKmdFiles();
 		}
 
-		if (internalTemplates != null) {
-			templatesDir = getInternalTemplatesDir(internalTemplates);
+		List<GenerationTarget> generationTargets = targets;
+		if (generationTargets.isEmpty()) {
+			generationTargets = new ArrayList<GenerationTarget>();
+			generationTargets.add(createDefaultTarget());
+		}
 
-			Path configFile = templatesDir.resolve(CONFIG_FILE_NAME);
+		Map<String, byte[]> generatedFiles = null;
+		if (inMemory) {
+			generatedFiles = Collections
+					.synchronizedMap(new TreeMap<String, byte[]>());
+		}
 
-			if (Files.exists(configFile)) {
-				JsonObject internalConfig = loadConfigFile(configFile);
-				overrideConfig(internalConfig, config);
-				config = internalConfig;
+		// Shared by all the targets, so the number of threads rendering
+		// templates is the same however many targets are generated at a time
+		ForkJoinPool renderPool = threads > 1 ? new ForkJoinPool(threads)
+				: null;
+
+		List<TargetGenerator> generators = new ArrayList<TargetGenerator>();
+		List<TargetGenerator> expandingGenerators = new ArrayList<TargetGenerator>();
+
+		for (GenerationTarget target : generationTargets) {
+			TargetGenerator generator = new TargetGenerator(target,
+					generatedFiles, renderPool);
+			if (generator.expandsMethodsWithOpsParams()) {
+				expandingGenerators.add(generator);
+			} else {
+				generators.add(generator);
 			}
 		}
 
+		// Reused models can have been expanded by the previous generation
+		if (!generators.isEmpty() && loadedModels == previousModels
+				&& hasExpandedModels()) {
+			previousModels = null;
+			loadModelsFromKmdFiles();
+		}
+
 		try {
 
-			if (deleteGenDir) {
-				PathUtils.delete(codegenDir, loadNoDeleteFiles(config));
+			// Before any target starts, as several targets can be generated
+			// in the same folder
+			for (TargetGenerator generator : generators) {
+				generator.deleteTempFiles();
 			}
-
-			if (codegenDir != null && !Files.exists(codegenDir)) {
-				Files.createDirectories(codegenDir);
+			for (TargetGenerator generator : expandingGenerators) {
+				generator.deleteTempFiles();
 			}
 
-			CodeGen codeGen = new CodeGen(templatesDir, codegenDir, verbose,
-					listGeneratedFiles, overwrite, config);
+			List<Error> errors = generateCode(generators);
 
-			for (Model model : modelManager.getModels()) {
-				if (config.has("expandMethodsWithOpsParams")
-						&& config.get("expandMethodsWithOpsParams")
-								.getAsBoolean()) {
+			// Expanding methods modifies the models, so the targets that need
+			// it are generated once the others have finished
+			if (!expandingGenerators.isEmpty()) {
+				for (Model model : modelManager.getModels()) {
 					model.expandMethodsWithOpsParams();
 				}
+				errors.addAll(generateCode(expandingGenerators));
+			}
 
-				if (templatesDir != null && codegenDir != null) {
-					codeGen.generateCode(model);
-				}
-
-				if (outputModelFile != null) {
+			if (outputModelFile != null) {
+				for (Model model : modelManager.getModels()) {
 					JsonModelSaverLoader.getInstance().writeToFile(
 							model,
 							new File(outputModelFile.toFile(), model.getName()
@@ -191,14 +538,89 @@ public class KurentoRomProcessor {
 				}
 			}
 
-			return new Result();
+			if (binaryOutputModelDir != null) {
+				for (Model model : modelManager.getModels()) {
+					BinaryModelSaverLoader.getInstance().writeToFile(
+							model,
+							new File(binaryOutputModelDir.toFile(), model
+									.getName()
+									+ BinaryModelSaverLoader.FILE_EXTENSION));
+				}
+			}
+
+			if (errors.isEmpty()) {
+				return new Result(generatedFiles);
+			} else {
+				return new Result(errors);
+			}
 
-		} catch (KurentoRomProcessorException e) {
-			return new Result(new Error("Error: " + e.getMessage()));
 		} catch (Exception e) {
-			e.printStackTrace();
-			return new Result(new Error("Unexpected error: "
-					+ e.getClass().getName() + " " + e.getMessage()));
+			return new Result(createError(e));
+		} finally {
+			if (renderPool != null) {
+				renderPool.shutdownNow();
+			}
+		}
+	}
+
+	private GenerationTarget createDefaultTarget() {
+		if (internalTemplates != null) {
+			return GenerationTarget.fromInternalTemplates(internalTemplates,
+					codegenDir, config);
+		} else {
+			return GenerationTarget.fromTemplatesDir(templatesDir, codegenDir,
+					config);
+		}
+	}
+
+	private List<Error> generateCode(List<TargetGenerator> generators) {
+
+		List<Error> errors = new ArrayList<Error>();
+
+		if (threads <= 1 || generators.size() <= 1) {
+			for (TargetGenerator generator : generators) {
+				try {
+					generator.call();
+				} catch (Exception e) {
+					errors.add(createError(e));
+				}
+			}
+			return errors;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, generators.size()));
+		try {
+			List<Future<Void>> results = executor.invokeAll(generators);
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						errors.add(createError((Exception) cause));
+					} else {
+						throw new KurentoRomProcessorException(cause);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			errors.add(new Error("Error: Code generation interrupted"));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return errors;
+	}
+
+	private Error createError(Exception e) {
+		if (e instanceof KurentoRomProcessorException) {
+			return new Error("Error: " + e.getMessage());
+		} else {
+			e.printStackTrace(err);
+			return new Error("Unexpected error: " + e.getClass().getName()
+					+ " " + e.getMessage());
 		}
 	}
 
@@ -243,13 +665,56 @@ public class KurentoRomProcessor {
 		}
 	}
 
+	private boolean hasExpandedModels() {
+		for (Model model : modelManager.getModels()) {
+			if (model.isMethodsExpanded()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void loadModelsFromKmdFiles() throws FileNotFoundException,
 			IOException {
 
-		log.debug("Loading dependencies");
-		depModelManager = new ModelManager();
-		depModelManager.addModels(loadModels(dependencyKmdFiles));
-		depModelManager.resolveModels();
+		// Computed before loading them, so changes made meanwhile are
+		// detected by the next generation
+		List<List<String>> kmdFilesKey = Arrays.asList(
+				ProcessorCache.createKey(kmdFilesToGen),
+				ProcessorCache.createKey(dependencyKmdFilesToGen),
+				ProcessorCache.createKey(dependencyKmdFiles));
+
+		if (previousModels != null
+				&& previousModels.kmdFilesKey.equals(kmdFilesKey)) {
+			log.debug("Reusing the models of the previous generation");
+			modelManager = previousModels.modelManager;
+			hasToGenerateCode = previousModels.hasToGenerateCode;
+			loadedModels = previousModels;
+			return;
+		}
+
+		List<Path> missingKmdFiles = new ArrayList<Path>();
+		if (cache != null) {
+			depModelManager = cache.getDependencies(dependencyKmdFiles,
+					missingKmdFiles);
+		} else {
+			missingKmdFiles.addAll(dependencyKmdFiles);
+		}
+
+		if (depModelManager == null || !missingKmdFiles.isEmpty()) {
+			log.debug("Loading dependencies");
+			// Cached models of some of the files are used to resolve the
+			// others, and are not modified
+			ModelManager cachedModelManager = depModelManager;
+			depModelManager = new ModelManager();
+			depModelManager.addModels(loadModels(missingKmdFiles));
+			depModelManager.setDependencies(cachedModelManager);
+			depModelManager.resolveModels();
+
+			if (cache != null) {
+				cache.putDependencies(dependencyKmdFiles, depModelManager);
+			}
+		}
 
 		Model model = fusionModels(loadModels(kmdFilesToGen));
 		if (model != null) {
@@ -268,6 +733,8 @@ public class KurentoRomProcessor {
 		hasToGenerateCode = (model != null) && !model.hasKmdSection()
 				|| !dependencyKmdFilesToGen.isEmpty();
 
+		loadedModels = new LoadedModels(kmdFilesKey, modelManager,
+				hasToGenerateCode);
 	}
 
 	private Model fusionModels(List<Model> models) {
@@ -284,22 +751,80 @@ public class KurentoRomProcessor {
 		return model;
 	}
 
+	/**
+	 * Loads the kmd files concurrently. Models are returned in the same order
+	 * as the files and, if several files fail to load, the error of the first
+	 * one is reported.
+	 */
 	private List<Model> loadModels(List<Path> kmdFiles)
 			throws FileNotFoundException, IOException {
 
-		List<Model> models = new ArrayList<>();
+		int loadThreads = Math.min(kmdFiles.size(), Runtime.getRuntime()
+				.availableProcessors());
+
+		if (loadThreads <= 1) {
+			List<Model> models = new ArrayList<>();
+			for (Path kmdFile : kmdFiles) {
+				models.add(loadModel(kmdFile));
+			}
+			return models;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(loadThreads);
+		try {
+			List<Future<Model>> results = new ArrayList<>();
+			for (final Path kmdFile : kmdFiles) {
+				results.add(executor.submit(new Callable<Model>() {
+					@Override
+					public Model call() throws IOException {
+						return loadModel(kmdFile);
+					}
+				}));
+			}
+
+			List<Model> models = new ArrayList<>();
+			for (Future<Model> result : results) {
+				models.add(getLoadedModel(result));
+			}
+			return models;
 
-		for (Path kmdFile : kmdFiles) {
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-			log.debug("Loading kmdFile " + kmdFile);
+	private Model loadModel(Path kmdFile) throws IOException {
 
-			Model model = JsonModelSaverLoader.getInstance().loadFromFile(
-					kmdFile);
+		log.debug("Loading kmdFile " + kmdFile);
 
-			models.add(model);
+		if (kmdFile.getFileName().toString()
+				.endsWith(BinaryModelSaverLoader.FILE_EXTENSION)) {
+			return BinaryModelSaverLoader.getInstance().loadFromFile(kmdFile);
 		}
 
-		return models;
+		return JsonModelSaverLoader.getInstance().loadFromFile(kmdFile);
+	}
+
+	private static Model getLoadedModel(Future<Model> result)
+			throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoRomProcessorException(
+					"Interrupted while loading kmd files", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof java.lang.Error) {
+				throw (java.lang.Error) cause;
+			} else {
+				throw new KurentoRomProcessorException(cause);
+			}
+		}
 	}
 
 	public void printValues(String[] keys) {
@@ -310,7 +835,7 @@ public class KurentoRomProcessor {
 
 			for (Model model : modelManager.getModels()) {
 				for (String key : keys) {
-					System.out.println("Value: " + key + " = "
+					out.println("Value: " + key + " = "
 							+ getValue(model, key));
 				}
 			}
@@ -370,4 +895,12 @@ public class KurentoRomProcessor {
 	public void setOutputFile(Path outputModelFile) {
 		this.outputModelFile = outputModelFile;
 	}
+
+	/**
+	 * Sets the directory where the resolved models are written in binary
+	 * form, to be loaded faster when used as dependencies.
+	 */
+	public void setBinaryOutputDir(Path binaryOutputModelDir) {
+		this.binaryOutputModelDir = binaryOutputModelDir;
+	}
 }
@@ -2,12 +2,16 @@ package com.kurento.ktool.rom.processor.codegen;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -19,6 +23,7 @@ import org.apache.commons.cli.PosixParser;
 
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
+import com.kurento.ktool.rom.processor.codegen.KurentoRomProcessor.LoadedModels;
 
 import freemarker.template.TemplateException;
 
@@ -37,10 +42,83 @@ public class Main {
 	private static final String INTERNAL_TEMPLATES = "it";
 	private static final String SHOW_VALUES = "s";
 	private static final String OUTPUT_MODEL = "o";
+	private static final String OUTPUT_BINARY_MODEL = "ob";
+	private static final String THREADS = "j";
+	private static final String TARGET = "tg";
+	private static final String INCREMENTAL = "inc";
+	private static final String DAEMON = "daemon";
+	private static final String WATCH = "w";
+	private static final String FSYNC = "fsync";
+	private static final String PRUNE = "pr";
+
+	/**
+	 * Thrown instead of calling {@link System#exit(int)}, so a run can be
+	 * executed in a JVM that keeps running (see {@link Daemon}).
+	 */
+	private static class ExitException extends RuntimeException {
+
+		private static final long serialVersionUID = 3187745932405405618L;
+
+		private final int status;
+
+		ExitException(int status) {
+			this.status = status;
+		}
+	}
+
+	private final PrintStream out;
+	private final PrintStream err;
+
+	private Main(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
 
 	public static void main(String[] args) throws IOException,
 			TemplateException {
 
+		int status = run(Paths.get(""), args, null);
+
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Executes the processor with the given command line arguments.
+	 * 
+	 * @param workingDir
+	 *            directory used to resolve relative paths in the arguments
+	 * @param cache
+	 *            cache of templates and dependency models shared between runs,
+	 *            or null
+	 * @return the exit status
+	 */
+	public static int run(Path workingDir, String[] args, ProcessorCache cache)
+			throws IOException, TemplateException {
+		return run(workingDir, args, cache, System.out, System.err);
+	}
+
+	/**
+	 * Executes the processor printing its output in the given streams, so
+	 * several runs can be executed concurrently in the same JVM.
+	 * 
+	 * @see #run(Path, String[], ProcessorCache)
+	 */
+	public static int run(Path workingDir, String[] args,
+			ProcessorCache cache, PrintStream out, PrintStream err)
+			throws IOException, TemplateException {
+		try {
+			new Main(out, err).execute(workingDir, args, cache);
+			return 0;
+		} catch (ExitException e) {
+			return e.status;
+		}
+	}
+
+	private void execute(Path workingDir, String[] args,
+			ProcessorCache cache) throws IOException, TemplateException {
+
 		Options options = configureOptions();
 
 		CommandLine line = null;
@@ -50,48 +128,251 @@ public class Main {
 			CommandLineParser parser = new PosixParser();
 			line = parser.parse(options, args);
 
-			if (line.hasOption(HELP) || !line.hasOption(ROM)) {
-				printHelp(options);
-				System.exit(0);
+			if (!line.hasOption(ROM) && !line.hasOption(DAEMON)) {
+				err.println("Missing required option: " + ROM);
+				printHelp(options, out);
+				exit(1);
+			}
+
+			if (line.hasOption(HELP)) {
+				printHelp(options, out);
+				exit(0);
 			}
 		} catch (ParseException e) {
-			System.err.println(e.getMessage());
-			printHelp(options);
-			System.exit(1);
+			err.println(e.getMessage());
+			printHelp(options, out);
+			exit(1);
+		}
+
+		if (line.hasOption(DAEMON)) {
+			if (cache != null) {
+				err.println("A daemon can't be started from a daemon");
+				exit(1);
+			}
+			new Daemon(getDaemonPort(line)).run();
+			return;
+		}
+
+		if (line.hasOption(WATCH)) {
+			if (cache != null) {
+				err.println("Watch mode can't be used in a daemon");
+				exit(1);
+			}
+			watch(workingDir, line);
+			return;
 		}
 
+		generate(workingDir, line, cache, line.hasOption(DELETE), null);
+	}
+
+	/**
+	 * @param previousModels
+	 *            models loaded by a previous generation, reused if their kmd
+	 *            files haven't changed, or null
+	 * @return the models used by the generation if it succeeded, or null
+	 */
+	private LoadedModels generate(Path workingDir, CommandLine line,
+			ProcessorCache cache, boolean deleteGenDir,
+			LoadedModels previousModels) throws IOException,
+			TemplateException {
+
 		KurentoRomProcessor krp = new KurentoRomProcessor();
-		krp.setDeleteGenDir(line.hasOption(DELETE));
+		krp.setCache(cache);
+		krp.setPreviousModels(previousModels);
+		krp.setOut(out);
+		krp.setErr(err);
+		krp.setDeleteGenDir(deleteGenDir);
 		krp.setVerbose(line.hasOption(VERBOSE));
 		krp.setOverwrite(!line.hasOption(NO_OVERWRITE));
 		krp.setListGeneratedFiles(line.hasOption(LIST_GEN_FILES));
+		krp.setThreads(getThreads(line));
+		krp.setFsync(line.hasOption(FSYNC));
+		krp.setPrune(line.hasOption(PRUNE));
+		krp.setIncremental(line.hasOption(INCREMENTAL)
+				|| line.hasOption(WATCH));
 
 		if (line.hasOption(TEMPLATES_DIR)) {
-			krp.setTemplatesDir(getTemplatesDir(line));
+			krp.setTemplatesDir(getTemplatesDir(workingDir, line));
 		} else if (line.hasOption(INTERNAL_TEMPLATES)) {
 			krp.setInternalTemplates(line.getOptionValue(INTERNAL_TEMPLATES));
 		}
 
-		krp.setConfig(getConfigContent(line));
-		krp.setKmdFilesToGen(getKmdFiles(line));
-		krp.setDependencyKmdFiles(getDependencyKmdFiles(line));
-		krp.setOutputFile(getOutputModelFile(line));
+		krp.setConfig(getConfigContent(workingDir, line));
+		krp.setKmdFilesToGen(getKmdFiles(workingDir, line));
+		krp.setDependencyKmdFiles(getDependencyKmdFiles(workingDir, line));
+		krp.setOutputFile(getOutputModelFile(workingDir, line, OUTPUT_MODEL));
+		krp.setBinaryOutputDir(getOutputModelFile(workingDir, line,
+				OUTPUT_BINARY_MODEL));
 
 		showValues(krp, line);
 
-		krp.setCodeGenDir(getCodegenDir(line));
+		krp.setCodeGenDir(getCodegenDir(workingDir, line));
+
+		for (GenerationTarget target : getTargets(workingDir, line)) {
+			krp.addTarget(target);
+		}
 
 		Result result = krp.generateCode();
 
 		if (result.isSuccess()) {
-			System.out.println("Generation success");
+			out.println("Generation success");
+			return krp.getLoadedModels();
 		} else {
-			System.out.println("Generation failed");
-			result.showErrorsInConsole();
+			out.println("Generation failed");
+			result.showErrors(out);
+			return null;
 		}
 	}
 
-	private static void showValues(KurentoRomProcessor krp, CommandLine line) {
+	/**
+	 * Generates code each time the kmd files, templates or configuration
+	 * change. Templates, dependency models and the resolved models of the last
+	 * successful generation are kept in memory, so kmd files are only loaded
+	 * again when they change, and only the templates whose inputs have changed
+	 * are rendered again.
+	 */
+	private void watch(Path workingDir, CommandLine line)
+			throws IOException, TemplateException {
+
+		ProcessorCache cache = new ProcessorCache();
+		List<Path> templatesDirs = getWatchedTemplatesDirs(workingDir, line);
+
+		List<Path> watchedPaths = new ArrayList<Path>(templatesDirs);
+		watchedPaths.addAll(getWatchedInputs(workingDir, line));
+
+		try (Watcher watcher = new Watcher(watchedPaths, getGeneratedPaths(
+				workingDir, line))) {
+
+			LoadedModels models = generateWatching(workingDir, line, cache,
+					line.hasOption(DELETE), null);
+
+			while (true) {
+				out.println("Watching for changes...");
+
+				Set<Path> changes = watcher.waitForChanges();
+
+				for (Path change : changes) {
+					if (isInAny(change, templatesDirs)) {
+						cache.clearTemplates();
+						break;
+					}
+				}
+
+				out.println("Changes detected in " + changes);
+				LoadedModels loadedModels = generateWatching(workingDir, line,
+						cache, false, models);
+				if (loadedModels != null) {
+					models = loadedModels;
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private LoadedModels generateWatching(Path workingDir, CommandLine line,
+			ProcessorCache cache, boolean deleteGenDir,
+			LoadedModels previousModels) throws IOException, TemplateException {
+		try {
+			return generate(workingDir, line, cache, deleteGenDir,
+					previousModels);
+		} catch (ExitException e) {
+			// The cause has been yet printed. Keep watching until it is fixed
+		} catch (RuntimeException | IOException e) {
+			out.println("Generation failed");
+			err.println("Error: " + e.getMessage());
+		}
+		return null;
+	}
+
+	private static boolean isInAny(Path path, List<Path> dirs) {
+		for (Path dir : dirs) {
+			if (path.startsWith(dir.toAbsolutePath().normalize())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static List<Path> getWatchedTemplatesDirs(Path workingDir,
+			CommandLine line) {
+
+		List<Path> templatesDirs = new ArrayList<Path>();
+
+		if (line.hasOption(TEMPLATES_DIR)) {
+			templatesDirs.add(workingDir.resolve(line
+					.getOptionValue(TEMPLATES_DIR)));
+		}
+
+		if (line.hasOption(TARGET)) {
+			for (String targetValue : line.getOptionValues(TARGET)) {
+				Path templates = workingDir.resolve(targetValue.split(",")[0]);
+				if (Files.isDirectory(templates)) {
+					templatesDirs.add(templates);
+				}
+			}
+		}
+
+		return templatesDirs;
+	}
+
+	private static List<Path> getWatchedInputs(Path workingDir,
+			CommandLine line) {
+
+		List<Path> inputs = new ArrayList<Path>();
+
+		for (String option : new String[] { ROM, DEPROM, CONFIG }) {
+			if (line.hasOption(option)) {
+				for (String value : line.getOptionValues(option)) {
+					inputs.add(workingDir.resolve(value));
+				}
+			}
+		}
+
+		if (line.hasOption(TARGET)) {
+			for (String targetValue : line.getOptionValues(TARGET)) {
+				String[] parts = targetValue.split(",");
+				if (parts.length == 3) {
+					inputs.add(workingDir.resolve(parts[2]));
+				}
+			}
+		}
+
+		return inputs;
+	}
+
+	private static List<Path> getGeneratedPaths(Path workingDir,
+			CommandLine line) {
+
+		List<Path> generated = new ArrayList<Path>();
+
+		for (String option : new String[] { CODEGEN, OUTPUT_MODEL,
+				OUTPUT_BINARY_MODEL }) {
+			if (line.hasOption(option)) {
+				for (String value : line.getOptionValues(option)) {
+					generated.add(workingDir.resolve(value));
+				}
+			}
+		}
+
+		if (line.hasOption(TARGET)) {
+			for (String targetValue : line.getOptionValues(TARGET)) {
+				String[] parts = targetValue.split(",");
+				if (parts.length > 1) {
+					generated.add(workingDir.resolve(parts[1]));
+				}
+			}
+		}
+
+		return generated;
+	}
+
+	private static void exit(int status) {
+		throw new ExitException(status);
+	}
+
+	private void showValues(KurentoRomProcessor krp, CommandLine line) {
 		if (!line.hasOption(SHOW_VALUES)) {
 			return;
 		}
@@ -99,7 +380,7 @@ public class Main {
 		String[] keys = line.getOptionValues(SHOW_VALUES);
 
 		krp.printValues(keys);
-		System.exit(0);
+		exit(0);
 	}
 
 	@SuppressWarnings("static-access")
@@ -117,13 +398,14 @@ public class Main {
 				.withDescription(
 						"A space separated list of Kurento Media Element "
 								+ "Description (kmd) files or folders containing this files.")
-				.hasArg().withArgName("ROM_FILE").isRequired().create(ROM));
+				.hasArg().withArgName("ROM_FILE").create(ROM));
 
 		options.addOption(OptionBuilder
 				.withLongOpt("deprom")
 				.withDescription(
 						"A space separated list of Kurento Media Element "
-								+ "Description (kmd) files used as dependencies or folders containing this files.")
+								+ "Description (kmd) files used as dependencies or folders containing this files. "
+								+ "Binary kmd files (.kmd.bin) are also accepted.")
 				.hasArg().withArgName("DEP_ROM_FILE").create(DEPROM));
 
 		options.addOption(OptionBuilder.withLongOpt("templates")
@@ -139,12 +421,20 @@ public class Main {
 				.withLongOpt("codegen")
 				.withDescription(
 						"Destination directory for generated files "
-								+ "(required if --show-values or --output-model is not present.")
+								+ "(required if --show-values or --output-model is not present). "
+								+ "Use ARCHIVE!/[DIR] to generate into a zip or jar archive, "
+								+ "e.g. out.jar!/")
 				.hasArg().withArgName("CODEGEN_DIR").create(CODEGEN));
 
 		options.addOption(DELETE, "delete", false,
 				"Delete destination directory before generating files.");
 
+		options.addOption(PRUNE, "prune", false,
+				"Delete the files generated by the previous generation with the "
+						+ "same templates that are not generated anymore, instead of "
+						+ "the whole destination directory. Files in no_delete "
+						+ "config are kept.");
+
 		options.addOption(LIST_GEN_FILES, "list-generated-files", false,
 				"List in the standard output the names of generated files.");
 
@@ -164,29 +454,85 @@ public class Main {
 						"Directory where the final model will be written.")
 				.hasArgs().withArgName("DIR").create(OUTPUT_MODEL));
 
+		options.addOption(OptionBuilder
+				.withLongOpt("output-binary-model")
+				.withDescription(
+						"Directory where the final model will be written in binary "
+								+ "form (.kmd.bin), that is loaded faster when used as "
+								+ "dependency.").hasArg().withArgName("DIR")
+				.create(OUTPUT_BINARY_MODEL));
+
 		options.addOption(OptionBuilder
 				.withLongOpt("no-overwrite")
 				.withDescription(
 						"Do not overwrite files if they are already generated.")
 				.create(NO_OVERWRITE));
 
+		options.addOption(OptionBuilder
+				.withLongOpt("threads")
+				.withDescription(
+						"Number of threads used to render templates. "
+								+ "Use 0 for one thread per available processor (default 1).")
+				.hasArg().withArgName("THREADS").create(THREADS));
+
+		options.addOption(FSYNC, "fsync", false,
+				"Sync generated files to disk before finishing, so they are not "
+						+ "lost or truncated if the system crashes.");
+
+		options.addOption(INCREMENTAL, "incremental", false,
+				"Skip templates whose inputs haven't changed since the previous "
+						+ "generation, using a cache stored in the codegen directory.");
+
+		options.addOption(OptionBuilder
+				.withLongOpt("target")
+				.withDescription(
+						"A space separated list of generation targets with format "
+								+ "TEMPLATES,CODEGEN_DIR[,CONFIG_FILE]. TEMPLATES is a templates "
+								+ "directory or the name of internal templates. Models are "
+								+ "loaded once and generated for all targets.")
+				.hasArgs().withArgName("TARGET").create(TARGET));
+
+		options.addOption(WATCH, "watch", false,
+				"Keeps running and generates code again, in incremental mode, "
+						+ "each time the kmd files, templates or configuration change.");
+
+		options.addOption(OptionBuilder
+				.withLongOpt("daemon")
+				.withDescription(
+						"Starts a daemon that keeps templates and dependency models "
+								+ "in memory and executes the requests received in the given "
+								+ "loopback port (default " + Daemon.DEFAULT_PORT
+								+ "), several at a time. Only requests with the secret "
+								+ "stored in ~/.ktool-rom-processor/daemon-PORT.secret, "
+								+ "readable only by the user, are accepted. Other options "
+								+ "are ignored.")
+				.hasOptionalArg().withArgName("PORT").create(DAEMON));
+
 		return options;
 	}
 
 	public static void printHelp(Options options) {
+		printHelp(options, System.out);
+	}
+
+	public static void printHelp(Options options, PrintStream out) {
 		HelpFormatter formatter = new HelpFormatter();
-		formatter.printHelp("ktool-rom-processor", options);
+		PrintWriter writer = new PrintWriter(out);
+		formatter.printHelp(writer, formatter.getWidth(),
+				"ktool-rom-processor", null, options,
+				formatter.getLeftPadding(), formatter.getDescPadding(), null);
+		writer.flush();
 	}
 
-	private static List<Path> getDependencyKmdFiles(CommandLine line)
-			throws IOException {
+	private List<Path> getDependencyKmdFiles(Path workingDir,
+			CommandLine line) throws IOException {
 
 		if (line.hasOption(DEPROM)) {
 
 			String[] kmdPathNames = line.getOptionValues(DEPROM);
 
-			List<Path> kmdFiles = PathUtils
-					.getPaths(kmdPathNames, "*.kmd.json");
+			List<Path> kmdFiles = PathUtils.getPaths(workingDir, kmdPathNames,
+					"*.kmd.{json,bin}");
 
 			if (kmdFiles.isEmpty()) {
 				String paths = null;
@@ -197,7 +543,7 @@ public class Main {
 						paths = paths + ":" + path;
 					}
 				}
-				System.err.println("No dependency kmd files found in paths: "
+				err.println("No dependency kmd files found in paths: "
 						+ paths);
 				return Collections.emptyList();
 			}
@@ -209,89 +555,188 @@ public class Main {
 		}
 	}
 
-	private static JsonObject getConfigContent(CommandLine line)
-			throws JsonIOException, IOException {
+	private JsonObject getConfigContent(Path workingDir,
+			CommandLine line) throws JsonIOException, IOException {
 
 		JsonObject configContents = new JsonObject();
 
 		String configValue = line.getOptionValue(CONFIG);
 		if (configValue != null) {
-			Path configFile = Paths.get(configValue);
-			if (!Files.exists(configFile)) {
-				System.err.println("Config file '" + configFile
-						+ "' does not exist or is not readable");
-				System.exit(1);
-			}
-			configContents = KurentoRomProcessor.loadConfigFile(configFile);
+			configContents = loadConfigFile(workingDir, configValue);
 		}
 
 		return configContents;
 	}
 
-	private static Path getCodegenDir(CommandLine line) {
+	private JsonObject loadConfigFile(Path workingDir,
+			String configValue) throws JsonIOException, IOException {
+
+		Path configFile = workingDir.resolve(configValue);
+		if (!Files.exists(configFile)) {
+			err.println("Config file '" + configFile
+					+ "' does not exist or is not readable");
+			exit(1);
+		}
+		return KurentoRomProcessor.loadConfigFile(configFile);
+	}
+
+	private Path getCodegenDir(Path workingDir, CommandLine line) {
 
 		if (!line.hasOption(CODEGEN)
-				&& (!line.hasOption(SHOW_VALUES) && !line
-						.hasOption(OUTPUT_MODEL))) {
-			printHelp(configureOptions());
-			System.exit(1);
+				&& (!line.hasOption(SHOW_VALUES)
+						&& !line.hasOption(OUTPUT_MODEL)
+						&& !line.hasOption(OUTPUT_BINARY_MODEL) && !line
+							.hasOption(TARGET))) {
+			printHelp(configureOptions(), out);
+			exit(1);
 		}
 
 		if (line.hasOption(CODEGEN)) {
-
-			File codegenDir = new File(line.getOptionValue(CODEGEN));
-			if (codegenDir.exists()) {
-				if (!codegenDir.canWrite()) {
-					System.err.println("Codegen '" + codegenDir
-							+ "' is not writable");
-					System.exit(1);
-				} else if (!codegenDir.isDirectory()) {
-					System.err.println("Codegen '" + codegenDir
-							+ "' is not a directory");
-					System.exit(1);
-				}
-			}
-			return codegenDir.toPath();
+			return checkCodegenDir(workingDir.resolve(
+					line.getOptionValue(CODEGEN)).toFile());
 		} else {
 			return null;
 		}
 	}
 
-	private static Path getTemplatesDir(CommandLine line) {
-		File templatesDir = new File(line.getOptionValue(TEMPLATES_DIR));
+	private Path checkCodegenDir(File codegenDir) {
+		if (codegenDir.exists()) {
+			if (!codegenDir.canWrite()) {
+				err.println("Codegen '" + codegenDir
+						+ "' is not writable");
+				exit(1);
+			} else if (!codegenDir.isDirectory()) {
+				err.println("Codegen '" + codegenDir
+						+ "' is not a directory");
+				exit(1);
+			}
+		}
+		return codegenDir.toPath();
+	}
+
+	private Path getTemplatesDir(Path workingDir, CommandLine line) {
+		return checkTemplatesDir(workingDir.resolve(
+				line.getOptionValue(TEMPLATES_DIR)).toFile());
+	}
+
+	private Path checkTemplatesDir(File templatesDir) {
 
 		if (templatesDir.exists()) {
 
 			if (!templatesDir.canRead()) {
-				System.err.println("TemplatesDir '" + templatesDir
+				err.println("TemplatesDir '" + templatesDir
 						+ "' is not readable");
-				System.exit(1);
+				exit(1);
 			} else if (!templatesDir.isDirectory()) {
-				System.err.println("TemplatesDir '" + templatesDir
+				err.println("TemplatesDir '" + templatesDir
 						+ "' is not a directory");
-				System.exit(1);
+				exit(1);
 			}
 
 			return templatesDir.toPath();
 
 		} else {
 
-			System.err.println("TemplatesDir '" + templatesDir
+			err.println("TemplatesDir '" + templatesDir
 					+ "' doesn't exist");
-			System.exit(1);
+			exit(1);
 			return null;
 		}
 	}
 
-	private static Path getOutputModelFile(CommandLine line) throws IOException {
+	private List<GenerationTarget> getTargets(Path workingDir,
+			CommandLine line) throws JsonIOException, IOException {
+
+		if (!line.hasOption(TARGET)) {
+			return Collections.emptyList();
+		}
+
+		List<GenerationTarget> targets = new ArrayList<GenerationTarget>();
+
+		for (String targetValue : line.getOptionValues(TARGET)) {
+
+			String[] parts = targetValue.split(",");
+			if (parts.length < 2 || parts.length > 3) {
+				err.println("Target '" + targetValue
+						+ "' should be TEMPLATES,CODEGEN_DIR[,CONFIG_FILE]");
+				exit(1);
+			}
 
-		if (!line.hasOption(OUTPUT_MODEL)) {
+			Path codegenDir = checkCodegenDir(workingDir.resolve(parts[1])
+					.toFile());
+
+			JsonObject config = null;
+			if (parts.length == 3) {
+				config = loadConfigFile(workingDir, parts[2]);
+			}
+
+			File templatesDir = workingDir.resolve(parts[0]).toFile();
+			if (templatesDir.isDirectory()) {
+				targets.add(GenerationTarget.fromTemplatesDir(
+						checkTemplatesDir(templatesDir), codegenDir, config));
+			} else {
+				targets.add(GenerationTarget.fromInternalTemplates(parts[0],
+						codegenDir, config));
+			}
+		}
+
+		return targets;
+	}
+
+	private int getDaemonPort(CommandLine line) {
+
+		String portValue = line.getOptionValue(DAEMON);
+		if (portValue == null) {
+			return Daemon.DEFAULT_PORT;
+		}
+
+		try {
+			return Integer.parseInt(portValue);
+		} catch (NumberFormatException e) {
+			err.println("Port '" + portValue + "' should be a number");
+			exit(1);
+			return -1;
+		}
+	}
+
+	private int getThreads(CommandLine line) {
+
+		if (!line.hasOption(THREADS)) {
+			return 1;
+		}
+
+		String threadsValue = line.getOptionValue(THREADS);
+
+		int threads = -1;
+		try {
+			threads = Integer.parseInt(threadsValue);
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+
+		if (threads < 0) {
+			err.println("Threads '" + threadsValue
+					+ "' should be a non negative number");
+			exit(1);
+		}
+
+		if (threads == 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+
+		return threads;
+	}
+
+	private Path getOutputModelFile(Path workingDir, CommandLine line,
+			String option) throws IOException {
+
+		if (!line.hasOption(option)) {
 			return null;
 		}
 
-		String outputPathName = line.getOptionValue(OUTPUT_MODEL);
+		String outputPathName = line.getOptionValue(option);
 
-		Path outputPath = Paths.get(outputPathName);
+		Path outputPath = workingDir.resolve(outputPathName);
 
 		if (!Files.exists(outputPath)) {
 			Files.createDirectories(outputPath);
@@ -302,20 +747,22 @@ public class Main {
 		} else {
 			System.err
 					.println("Output directory option should be a writable directory");
-			System.exit(1);
+			exit(1);
 			return null;
 		}
 	}
 
-	private static List<Path> getKmdFiles(CommandLine line) throws IOException {
+	private List<Path> getKmdFiles(Path workingDir, CommandLine line)
+			throws IOException {
 
 		String[] kmdPathNames = line.getOptionValues(ROM);
-		List<Path> kmdFiles = PathUtils.getPaths(kmdPathNames, "*.kmd.json");
+		List<Path> kmdFiles = PathUtils.getPaths(workingDir, kmdPathNames,
+				"*.kmd.json");
 
 		if (kmdFiles.isEmpty()) {
-			System.err.println("No kmd files found in paths: "
+			err.println("No kmd files found in paths: "
 					+ Arrays.toString(kmdPathNames));
-			System.exit(1);
+			exit(1);
 		}
 
 		return kmdFiles;
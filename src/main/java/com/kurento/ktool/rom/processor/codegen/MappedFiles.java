@@ -0,0 +1,213 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads text files decoding them straight from a memory mapped buffer, instead
+ * of going through several layers of streams and buffers. The buffer is
+ * decoded in chunks as the file is read, so the content of big files is never
+ * held in memory as a whole. Files are compared with a content in the same
+ * way. Small files are read with a single call into a direct buffer reused by
+ * each thread, as mapping them costs more than reading them. Files that are
+ * not in the default file system (as templates inside a jar) are read with a
+ * stream.
+ */
+public class MappedFiles {
+
+	private static final int MAP_THRESHOLD = 64 * 1024;
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final ThreadLocal<ByteBuffer> smallFileBuffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(MAP_THRESHOLD);
+		}
+	};
+
+	/**
+	 * Decodes a buffer in chunks of chars as they are read.
+	 */
+	private static class DecodingReader extends Reader {
+
+		private final ByteBuffer bytes;
+		private final CharsetDecoder decoder;
+		private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+		private boolean decoded;
+		private boolean flushed;
+
+		DecodingReader(ByteBuffer bytes, CharsetDecoder decoder) {
+			this.bytes = bytes;
+			this.decoder = decoder;
+			chars.flip();
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!chars.hasRemaining() && !fill()) {
+				return -1;
+			}
+			int read = Math.min(len, chars.remaining());
+			chars.get(cbuf, off, read);
+			return read;
+		}
+
+		private boolean fill() throws IOException {
+			chars.clear();
+			while (chars.position() == 0 && !flushed) {
+				CoderResult result;
+				if (!decoded) {
+					// All the input is in the buffer
+					result = decoder.decode(bytes, chars, true);
+					decoded = result.isUnderflow();
+				} else {
+					result = decoder.flush(chars);
+					flushed = result.isUnderflow();
+				}
+				if (result.isError()) {
+					result.throwException();
+				}
+			}
+			chars.flip();
+			return chars.hasRemaining();
+		}
+
+		@Override
+		public void close() {
+			// The mapping is released when the buffer is collected
+		}
+	}
+
+	/**
+	 * @param malformedInputAction
+	 *            what to do with input that is not valid in the charset
+	 */
+	public static Reader newReader(Path file, Charset charset,
+			CodingErrorAction malformedInputAction) throws IOException {
+
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(malformedInputAction)
+				.onUnmappableCharacter(malformedInputAction);
+
+		if (file.getFileSystem() != FileSystems.getDefault()) {
+			return new BufferedReader(new InputStreamReader(
+					Files.newInputStream(file), decoder));
+		}
+
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+
+			if (channel.size() < MAP_THRESHOLD) {
+				ByteBuffer bytes = smallFileBuffers.get();
+				bytes.clear();
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+					// Read until the end of the file
+				}
+				// The file can have grown since its size was read
+				if (channel.position() >= channel.size()) {
+					// Decoded at once, as the buffer is reused by the thread
+					bytes.flip();
+					CharBuffer chars = decoder.decode(bytes);
+					return new CharArrayReader(chars.array(),
+							chars.arrayOffset() + chars.position(),
+							chars.remaining());
+				}
+			}
+
+			// The mapping is still valid once the channel is closed
+			return new DecodingReader(map(channel), decoder);
+		}
+	}
+
+	/**
+	 * Compares the content of a file with the given bytes, reading it as
+	 * {@link #newReader} does.
+	 */
+	public static boolean contentEquals(Path file, byte[] content)
+			throws IOException {
+		return contentEquals(file, content, content.length);
+	}
+
+	/**
+	 * Compares the content of a file with the first bytes of an array.
+	 */
+	public static boolean contentEquals(Path file, byte[] content, int length)
+			throws IOException {
+
+		if (file.getFileSystem() != FileSystems.getDefault()) {
+			return Files.size(file) == length
+					&& ByteBuffer.wrap(Files.readAllBytes(file)).equals(
+							ByteBuffer.wrap(content, 0, length));
+		}
+
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+
+			if (channel.size() != length) {
+				return false;
+			}
+
+			ByteBuffer bytes;
+			if (length < MAP_THRESHOLD) {
+				bytes = smallFileBuffers.get();
+				bytes.clear();
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+					// Read until the end of the file
+				}
+				bytes.flip();
+			} else {
+				bytes = map(channel);
+			}
+
+			return bytes.equals(ByteBuffer.wrap(content, 0, length));
+		}
+	}
+
+	/**
+	 * Compares the contents of two files, mapping them when they are in the
+	 * default file system.
+	 */
+	public static boolean contentEquals(Path file1, Path file2)
+			throws IOException {
+
+		if (Files.size(file1) != Files.size(file2)) {
+			return false;
+		}
+
+		if (file1.getFileSystem() != FileSystems.getDefault()
+				|| file2.getFileSystem() != FileSystems.getDefault()) {
+			return Arrays.equals(Files.readAllBytes(file1),
+					Files.readAllBytes(file2));
+		}
+
+		try (FileChannel channel1 = FileChannel.open(file1,
+				StandardOpenOption.READ);
+				FileChannel channel2 = FileChannel.open(file2,
+						StandardOpenOption.READ)) {
+			return map(channel1).equals(map(channel2));
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+}
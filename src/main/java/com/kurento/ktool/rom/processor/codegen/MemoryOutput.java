@@ -0,0 +1,41 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Keeps generated files in memory instead of writing them. When the
+ * transaction is committed, the content of each file is put in a map, with
+ * the path the file would have been written to as key (see
+ * {@link GeneratedFileWriter#getOutputPath()}).
+ */
+class MemoryOutput extends OutputTransaction {
+
+	private final Map<String, byte[]> generatedFiles;
+
+	/**
+	 * @param generatedFiles
+	 *            map where files are put. It has to be synchronized if it is
+	 *            shared by transactions committed concurrently.
+	 */
+	MemoryOutput(Map<String, byte[]> generatedFiles) {
+		super(null, null, false);
+		this.generatedFiles = generatedFiles;
+	}
+
+	@Override
+	boolean isInMemory() {
+		return true;
+	}
+
+	@Override
+	public synchronized void commit() throws IOException {
+		try {
+			for (GeneratedFileWriter file : getFiles()) {
+				generatedFiles.put(file.getOutputPath(), file.getContent());
+			}
+		} finally {
+			rollback();
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kurento.ktool.rom.processor.model.Code;
+import com.kurento.ktool.rom.processor.model.ComplexType;
+import com.kurento.ktool.rom.processor.model.DataItem;
+import com.kurento.ktool.rom.processor.model.Event;
+import com.kurento.ktool.rom.processor.model.Import;
+import com.kurento.ktool.rom.processor.model.Model;
+import com.kurento.ktool.rom.processor.model.ModelElement;
+import com.kurento.ktool.rom.processor.model.NamedElement;
+import com.kurento.ktool.rom.processor.model.PrimitiveType;
+import com.kurento.ktool.rom.processor.model.Property;
+import com.kurento.ktool.rom.processor.model.RemoteClass;
+import com.kurento.ktool.rom.processor.model.Return;
+import com.kurento.ktool.rom.processor.model.Type;
+import com.kurento.ktool.rom.processor.model.TypeRef;
+
+/**
+ * Computes hashes of the parts of a resolved model that templates can read.
+ * Each part is identified by a dependency key:
+ * <ul>
+ * <li>{@code model:<model>}: name, versions, code section and imports of a
+ * model.</li>
+ * <li>{@code list:<model>/<list>}: the names of the remote classes, complex
+ * types or events of a model.</li>
+ * <li>{@code type:<model>/<type>}: a type with all its members, the kind of
+ * the types it references and its super types.</li>
+ * </ul>
+ * The generated model and all the models it imports are indexed, so any
+ * object of them can be mapped to the key of the part that contains it.
+ * <p>
+ * Fingerprints are computed once and cached, so an instance should only be
+ * used while the models are not modified. It can be used from several threads.
+ */
+public class ModelFingerprint {
+
+	private static final String MODEL_PREFIX = "model:";
+	private static final String LIST_PREFIX = "list:";
+	private static final String TYPE_PREFIX = "type:";
+
+	private final Map<Object, String> dependencyKeys = new IdentityHashMap<>();
+	private final Map<String, Object> dependencies = new HashMap<>();
+	private final Map<Type, String> typeOwners = new IdentityHashMap<>();
+	private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+	public ModelFingerprint(Model model) {
+		index(model);
+		for (Model dependencyModel : model.getDependencyModels()) {
+			index(dependencyModel);
+		}
+	}
+
+	private void index(Model model) {
+
+		String name = model.getName();
+		String modelKey = MODEL_PREFIX + name;
+
+		if (dependencies.containsKey(modelKey)) {
+			return;
+		}
+
+		put(modelKey, model);
+		dependencyKeys.put(model.getImports(), modelKey);
+		for (Import importInfo : model.getImports()) {
+			dependencyKeys.put(importInfo, modelKey);
+		}
+		if (model.getCode() != null) {
+			dependencyKeys.put(model.getCode(), modelKey);
+		}
+
+		indexTypes(name, "remoteClasses", model.getRemoteClasses());
+		indexTypes(name, "complexTypes", model.getComplexTypes());
+		indexTypes(name, "events", model.getEvents());
+	}
+
+	private void indexTypes(String modelName, String listName,
+			List<? extends Type> types) {
+
+		put(LIST_PREFIX + modelName + "/" + listName, types);
+
+		for (Type type : types) {
+			String typeKey = TYPE_PREFIX + modelName + "/" + type.getName();
+			put(typeKey, type);
+			typeOwners.put(type, modelName);
+			indexChildren(type, typeKey);
+		}
+	}
+
+	private void indexChildren(ModelElement element, String key) {
+		for (ModelElement child : element.getChildren()) {
+			dependencyKeys.put(child, key);
+			indexChildren(child, key);
+		}
+	}
+
+	private void put(String key, Object dependency) {
+		dependencies.put(key, dependency);
+		dependencyKeys.put(dependency, key);
+	}
+
+	/**
+	 * @return the key of the part of the models that contains the object, or
+	 *         null if the object is not part of the indexed models
+	 */
+	public String getDependencyKey(Object object) {
+		return dependencyKeys.get(object);
+	}
+
+	/**
+	 * @return the current fingerprint of a part of the models, or null if the
+	 *         part doesn't exist anymore
+	 */
+	public String getFingerprint(String dependencyKey) {
+
+		String fingerprint = fingerprints.get(dependencyKey);
+
+		if (fingerprint == null) {
+			Object dependency = dependencies.get(dependencyKey);
+			if (dependency == null) {
+				return null;
+			}
+
+			Digester digester = new Digester();
+			if (dependency instanceof Model) {
+				addModelHeader(digester, (Model) dependency);
+			} else if (dependency instanceof List) {
+				addNames(digester, (List<?>) dependency);
+			} else {
+				addType(digester, (Type) dependency);
+			}
+			fingerprint = digester.digest();
+			fingerprints.put(dependencyKey, fingerprint);
+		}
+
+		return fingerprint;
+	}
+
+	private void addModelHeader(Digester digester, Model model) {
+
+		digester.add(model.getName());
+		digester.add(model.getVersion());
+		digester.add(model.getKurentoVersion());
+		digester.add(model.getRepository());
+
+		Code code = model.getCode();
+		digester.add(code != null);
+		if (code != null) {
+			addMap(digester, code.getKmd());
+			addMap(digester, code.getApi());
+			addMap(digester, code.getImplementation());
+		}
+
+		digester.add(model.getImports().size());
+		for (Import importInfo : model.getImports()) {
+			digester.add(importInfo.getName());
+			digester.add(importInfo.getVersion());
+		}
+	}
+
+	private void addMap(Digester digester, Map<String, ?> map) {
+
+		if (map == null) {
+			digester.add(-1);
+			return;
+		}
+
+		// Sorted, so the fingerprint doesn't depend on the iteration order
+		Map<String, ?> sortedMap = new TreeMap<String, Object>(map);
+
+		digester.add(sortedMap.size());
+		for (Map.Entry<String, ?> entry : sortedMap.entrySet()) {
+			digester.add(entry.getKey());
+			if (entry.getValue() instanceof Map) {
+				@SuppressWarnings("unchecked")
+				Map<String, ?> subsection = (Map<String, ?>) entry.getValue();
+				addMap(digester, subsection);
+			} else {
+				digester.add(String.valueOf(entry.getValue()));
+			}
+		}
+	}
+
+	private void addNames(Digester digester, List<?> types) {
+		digester.add(types.size());
+		for (Object type : types) {
+			digester.add(((Type) type).getName());
+		}
+	}
+
+	/**
+	 * Functions used by templates navigate the hierarchy of the types and the
+	 * kind of the referenced types without going through the templates, so
+	 * those are part of the fingerprint of the type.
+	 */
+	private void addType(Digester digester, Type type) {
+
+		addElement(digester, type);
+
+		TypeRef extendsRef = getExtends(type);
+		if (extendsRef != null && extendsRef.getType() != null) {
+			Type superType = extendsRef.getType();
+			String superTypeKey = dependencyKeys.get(superType);
+			digester.add(superTypeKey != null ? getFingerprint(superTypeKey)
+					: superType.getName());
+		}
+	}
+
+	private TypeRef getExtends(Type type) {
+		if (type instanceof RemoteClass) {
+			return ((RemoteClass) type).getExtends();
+		} else if (type instanceof ComplexType) {
+			return ((ComplexType) type).getExtends();
+		} else if (type instanceof Event) {
+			return ((Event) type).getExtends();
+		}
+		return null;
+	}
+
+	private void addElements(Digester digester,
+			List<? extends ModelElement> elements) {
+		digester.add(elements.size());
+		for (ModelElement element : elements) {
+			addElement(digester, element);
+		}
+	}
+
+	private void addElement(Digester digester, ModelElement element) {
+
+		digester.add(element.getClass().getName());
+
+		if (element instanceof NamedElement) {
+			NamedElement namedElement = (NamedElement) element;
+			digester.add(namedElement.getName());
+			digester.add(namedElement.getDoc());
+		}
+
+		if (element instanceof TypeRef) {
+			TypeRef typeRef = (TypeRef) element;
+			digester.add(typeRef.getName());
+			digester.add(typeRef.isList());
+			addReferencedType(digester, typeRef.getType());
+		}
+
+		if (element instanceof DataItem) {
+			DataItem dataItem = (DataItem) element;
+			digester.add(dataItem.isOptional());
+			digester.add(dataItem.getDefaultValue() != null ? dataItem
+					.getDefaultValue().toString() : null);
+		}
+
+		if (element instanceof Property) {
+			Property property = (Property) element;
+			digester.add(property.isReadOnly());
+			digester.add(property.isFinal());
+		}
+
+		if (element instanceof RemoteClass) {
+			digester.add(((RemoteClass) element).isAbstract());
+		}
+
+		if (element instanceof ComplexType) {
+			ComplexType complexType = (ComplexType) element;
+			digester.add(String.valueOf(complexType.getTypeFormat()));
+			digester.add(String.valueOf(complexType.getValues()));
+		}
+
+		if (element instanceof Return) {
+			digester.add(((Return) element).getDoc());
+		}
+
+		addElements(digester, element.getChildren());
+	}
+
+	private void addReferencedType(Digester digester, Type type) {
+		if (type == null) {
+			digester.add(-1);
+			return;
+		}
+
+		digester.add(type.getClass().getName());
+		if (!(type instanceof PrimitiveType)) {
+			digester.add(typeOwners.get(type));
+		}
+		if (type instanceof ComplexType) {
+			digester.add(String.valueOf(((ComplexType) type).getTypeFormat()));
+		}
+	}
+}
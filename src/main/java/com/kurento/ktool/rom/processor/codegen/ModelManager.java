@@ -1,9 +1,15 @@
 package com.kurento.ktool.rom.processor.codegen;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.kurento.ktool.rom.processor.model.Model;
 
@@ -16,10 +22,94 @@ public class ModelManager {
 		this.models = new HashMap<>();
 	}
 
+	/**
+	 * Resolves the models level by level, as planned by
+	 * {@link ResolutionPlanner}. The models of a level don't import each
+	 * other, so they are resolved concurrently.
+	 */
 	public void resolveModels() {
-		for (Model model : models.values()) {
+
+		ResolutionPlanner planner = new ResolutionPlanner(this, models.values());
+		List<List<Model>> levels = planner.plan();
+
+		// Resolved first, so that concurrent models don't resolve a shared
+		// dependency at the same time
+		for (Model model : planner.getImportedDependencies()) {
 			model.resolveModel(this);
 		}
+
+		int maxLevelSize = 0;
+		for (List<Model> level : levels) {
+			maxLevelSize = Math.max(maxLevelSize, level.size());
+		}
+
+		int resolveThreads = Math.min(maxLevelSize, Runtime.getRuntime()
+				.availableProcessors());
+
+		if (resolveThreads <= 1) {
+			for (List<Model> level : levels) {
+				for (Model model : level) {
+					model.resolveModel(this);
+				}
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(resolveThreads);
+		try {
+			for (List<Model> level : levels) {
+				resolveLevel(executor, level);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void resolveLevel(ExecutorService executor, List<Model> level) {
+
+		if (level.size() == 1) {
+			level.get(0).resolveModel(this);
+			return;
+		}
+
+		List<Future<Void>> results = new ArrayList<>();
+		for (final Model model : level) {
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					model.resolveModel(ModelManager.this);
+					return null;
+				}
+			}));
+		}
+
+		// The level is finished before reporting the error of its first model
+		KurentoRomProcessorException interrupted = null;
+		Throwable error = null;
+		for (Future<Void> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				interrupted = new KurentoRomProcessorException(
+						"Interrupted while resolving models", e);
+				break;
+			} catch (ExecutionException e) {
+				if (error == null) {
+					error = e.getCause();
+				}
+			}
+		}
+
+		if (interrupted != null) {
+			throw interrupted;
+		} else if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error instanceof java.lang.Error) {
+			throw (java.lang.Error) error;
+		} else if (error != null) {
+			throw new KurentoRomProcessorException(error);
+		}
 	}
 
 	public Model getModel(String name, String version) {
@@ -37,25 +127,13 @@ public class ModelManager {
 		return null;
 	}
 
-	private void removeModel(String name) {
-		Model model = models.get(name);
-		if (model != null) {
-			models.remove(model.getName());
-		}
-
-		if (dependencies != null) {
-			dependencies.removeModel(name);
-		}
-	}
-
+	/**
+	 * Sets the models used to resolve the imports not found in this manager.
+	 * The dependencies are not modified, so they can be shared by several
+	 * managers.
+	 */
 	public void setDependencies(ModelManager dependencies) {
 		this.dependencies = dependencies;
-
-		for (Model model : dependencies.getModels()) {
-			if (models.get(model.getName()) != null) {
-				this.dependencies.removeModel(model.getName());
-			}
-		}
 	}
 
 	public Collection<Model> getModels() {
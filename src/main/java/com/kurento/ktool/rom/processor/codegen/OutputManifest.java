@@ -0,0 +1,201 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Hashes of the files generated in a codegen dir. It is used to know if a
+ * generated file has the same content as the existing one without reading it:
+ * if the file has the size and modification time recorded in the manifest,
+ * its hash is compared with the one of the new content. Otherwise (the file
+ * has been modified or there isn't a manifest) both contents have to be
+ * compared.
+ *
+ * Each target generated in a codegen dir has its own manifest, so targets
+ * with different templates don't consider the files of the others as
+ * orphaned.
+ */
+public class OutputManifest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OutputManifest.class);
+
+	private static final String MANIFEST_FILE_PREFIX = ".ktool-rom-processor.";
+	private static final String MANIFEST_FILE_SUFFIX = ".manifest";
+
+	private static final int FORMAT_VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static class ManifestFile {
+		String hash;
+		long size;
+		long lastModified;
+	}
+
+	private static class ManifestContent {
+		int version;
+		Map<String, ManifestFile> files = new TreeMap<>();
+	}
+
+	private final Path outputFolder;
+	private final Path manifestFile;
+	private final Map<String, ManifestFile> previousFiles;
+	private final Map<String, ManifestFile> files = new ConcurrentHashMap<>();
+	private final Gson gson = new GsonBuilder().create();
+
+	private OutputManifest(Path outputFolder, Path manifestFile,
+			Map<String, ManifestFile> previousFiles) {
+		this.outputFolder = outputFolder;
+		this.manifestFile = manifestFile;
+		this.previousFiles = previousFiles;
+	}
+
+	/**
+	 * Loads the manifest of a target stored in a codegen dir. If there isn't a
+	 * manifest or it can't be used, an empty one is returned.
+	 * 
+	 * @param templatesId
+	 *            identifier of the templates of the target (see
+	 *            {@link GenerationTarget#getTemplatesId()})
+	 */
+	public static OutputManifest load(Path outputFolder, String templatesId) {
+
+		Map<String, ManifestFile> previousFiles = Collections.emptyMap();
+		Path manifestFile = outputFolder.resolve(MANIFEST_FILE_PREFIX
+				+ templatesId + MANIFEST_FILE_SUFFIX);
+
+		if (Files.exists(manifestFile)) {
+			try (Reader reader = Files.newBufferedReader(manifestFile, UTF8)) {
+				ManifestContent content = new Gson().fromJson(reader,
+						ManifestContent.class);
+				if (content != null && content.version == FORMAT_VERSION
+						&& content.files != null) {
+					previousFiles = content.files;
+				}
+			} catch (IOException | JsonParseException e) {
+				log.debug("Ignoring output manifest " + manifestFile + ": "
+						+ e.getMessage());
+			}
+		}
+
+		return new OutputManifest(outputFolder, manifestFile, previousFiles);
+	}
+
+	/**
+	 * @param fileName
+	 *            name of an existing generated file, relative to the codegen
+	 *            dir
+	 * @return the SHA-1 of the content of the file, as an hexadecimal string,
+	 *         or null if it is not known because the file has been modified
+	 *         since it was recorded
+	 */
+	public String getHash(String fileName) throws IOException {
+		ManifestFile file = previousFiles.get(fileName);
+		if (file != null && isUnmodified(outputFolder.resolve(fileName), file)) {
+			return file.hash;
+		}
+		return null;
+	}
+
+	/**
+	 * Records the content of a file generated (or left untouched because it
+	 * had the same content) in this run.
+	 */
+	public void update(String fileName, String hash) throws IOException {
+
+		Path path = outputFolder.resolve(fileName);
+
+		ManifestFile file = new ManifestFile();
+		file.hash = hash;
+		file.size = Files.size(path);
+		file.lastModified = Files.getLastModifiedTime(path).toMillis();
+		files.put(fileName, file);
+	}
+
+	/**
+	 * Keeps the record of a file that has not been generated again in this
+	 * run, because its render was skipped.
+	 */
+	public void keep(String fileName) {
+		ManifestFile file = previousFiles.get(fileName);
+		if (file != null) {
+			files.put(fileName, file);
+		}
+	}
+
+	/**
+	 * @return the files recorded when the manifest was loaded (generated by
+	 *         the previous generation of the target) that haven't been
+	 *         generated or kept since then, sorted by name
+	 */
+	public List<String> getOrphanedFiles() {
+		List<String> orphanedFiles = new ArrayList<String>();
+		for (String fileName : new TreeMap<String, ManifestFile>(
+				previousFiles).keySet()) {
+			if (!files.containsKey(fileName)) {
+				orphanedFiles.add(fileName);
+			}
+		}
+		return orphanedFiles;
+	}
+
+	/**
+	 * Keeps the records of the orphaned files that still exist, so they can be
+	 * pruned by a later generation.
+	 */
+	public void keepOrphanedFiles() {
+		for (String fileName : getOrphanedFiles()) {
+			if (Files.exists(outputFolder.resolve(fileName))) {
+				keep(fileName);
+			}
+		}
+	}
+
+	private static boolean isUnmodified(Path path, ManifestFile file)
+			throws IOException {
+		return file.hash != null && Files.size(path) == file.size
+				&& Files.getLastModifiedTime(path).toMillis() == file.lastModified;
+	}
+
+	/**
+	 * Writes the manifest of the target to the codegen dir. Only the files generated or kept
+	 * since the manifest was loaded are recorded.
+	 */
+	public void save() throws IOException {
+
+		ManifestContent content = new ManifestContent();
+		content.version = FORMAT_VERSION;
+		content.files = new TreeMap<String, ManifestFile>(files);
+
+		Path tempFile = Files.createTempFile(outputFolder, manifestFile
+				.getFileName().toString(), ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile, UTF8)) {
+				gson.toJson(content, writer);
+			}
+			Files.move(tempFile, manifestFile,
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files generated for a codegen dir that are not yet in place. Each file is
+ * staged in a temporary file next to its final location, and all of them are
+ * moved into place with atomic renames when the generation has finished. If
+ * the generation fails, the staged files are removed and the codegen dir is
+ * left as it was, instead of with some files half written.
+ *
+ * Staged files are recorded in the manifest and in the generation cache once
+ * they are in place, as the cache stores the size and modification time of
+ * the files that have been written.
+ *
+ * Optionally, the content of the files is synced to disk before they are
+ * moved, and the directories after it, so the generated files also survive a
+ * crash of the system. It is done once for all the files, as a single
+ * barrier, instead of after writing each of them.
+ */
+public class OutputTransaction {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OutputTransaction.class);
+
+	private static class CacheUpdate {
+		String id;
+		String key;
+		Map<String, String> dependencies;
+		List<String> fileNames;
+	}
+
+	private final OutputManifest manifest;
+	private final GenerationCache cache;
+	private final boolean sync;
+	private final Map<Path, GeneratedFileWriter> files = new LinkedHashMap<Path, GeneratedFileWriter>();
+	private final List<CacheUpdate> cacheUpdates = new ArrayList<CacheUpdate>();
+
+	/**
+	 * @param manifest
+	 *            manifest where committed files are recorded. It can be null.
+	 * @param cache
+	 *            generation cache where the renders of committed files are
+	 *            recorded. It can be null.
+	 * @param sync
+	 *            if files have to be synced to disk when they are committed
+	 */
+	public OutputTransaction(OutputManifest manifest, GenerationCache cache,
+			boolean sync) {
+		this.manifest = manifest;
+		this.cache = cache;
+		this.sync = sync;
+	}
+
+	/**
+	 * @return if the generated files have to be kept in memory until the
+	 *         transaction is committed, instead of in temporary files
+	 */
+	boolean isInMemory() {
+		return false;
+	}
+
+	/**
+	 * @return the file next to which generated files too big to be kept in
+	 *         memory are staged, when they are not written to their output
+	 *         path (see {@link GeneratedFileWriter#getOutputPath()}), or null
+	 *         if each file is staged next to its output path and replaces it
+	 */
+	Path getStagingPath() {
+		return null;
+	}
+
+	boolean isSync() {
+		return sync;
+	}
+
+	/**
+	 * @return the staged files, in the order they were staged
+	 */
+	Collection<GeneratedFileWriter> getFiles() {
+		return files.values();
+	}
+
+	/**
+	 * @return the file staged to be written in the given path, or null if
+	 *         there isn't any
+	 */
+	synchronized GeneratedFileWriter getFile(Path outputFile) {
+		return files.get(outputFile);
+	}
+
+	/**
+	 * Stages a generated file. If another one was staged for the same path, it
+	 * is replaced.
+	 */
+	synchronized void add(GeneratedFileWriter file) throws IOException {
+		file.stage();
+		GeneratedFileWriter previous = files.put(file.getOutputFile(), file);
+		if (previous != null) {
+			previous.discard();
+		}
+	}
+
+	/**
+	 * Stores the result of a render in the generation cache when the
+	 * transaction is committed, as some of its files are staged (see
+	 * {@link GenerationCache#update(String, String, Map, List)}).
+	 */
+	synchronized void updateCache(String id, String key,
+			Map<String, String> dependencies, List<String> fileNames) {
+		if (cache != null) {
+			CacheUpdate update = new CacheUpdate();
+			update.id = id;
+			update.key = key;
+			update.dependencies = dependencies;
+			update.fileNames = fileNames;
+			cacheUpdates.add(update);
+		}
+	}
+
+	/**
+	 * Moves all staged files into place, in the order they were staged.
+	 */
+	public synchronized void commit() throws IOException {
+
+		if (sync) {
+			for (GeneratedFileWriter file : files.values()) {
+				file.sync();
+			}
+		}
+
+		Set<Path> folders = new LinkedHashSet<Path>();
+		List<Path> committed = new ArrayList<Path>();
+		try {
+			for (GeneratedFileWriter file : files.values()) {
+				file.commit();
+				committed.add(file.getOutputFile());
+				folders.add(file.getOutputFile().getParent());
+				if (manifest != null) {
+					manifest.update(file.getFileName(), file.getHash());
+				}
+			}
+		} finally {
+			files.keySet().removeAll(committed);
+		}
+
+		if (sync) {
+			for (Path folder : folders) {
+				syncFolder(folder);
+			}
+		}
+
+		try {
+			for (CacheUpdate update : cacheUpdates) {
+				cache.update(update.id, update.key, update.dependencies,
+						update.fileNames);
+			}
+		} finally {
+			cacheUpdates.clear();
+		}
+	}
+
+	/**
+	 * Removes the staged files that haven't been committed.
+	 */
+	public synchronized void rollback() throws IOException {
+		try {
+			for (GeneratedFileWriter file : files.values()) {
+				file.discard();
+			}
+		} finally {
+			files.clear();
+			cacheUpdates.clear();
+		}
+	}
+
+	private static void syncFolder(Path folder) {
+		try (FileChannel channel = FileChannel.open(folder,
+				StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Directories can't be opened in some platforms, where renames
+			// are durable without it
+			log.debug("Directory " + folder + " can not be synced: "
+					+ e.getMessage());
+		}
+	}
+}
@@ -56,6 +56,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributeView;
@@ -131,8 +132,8 @@ public class PathTemplateLoader implements TemplateLoader {
 					+ templateSource.getClass().getName());
 		}
 
-		return Files.newBufferedReader((Path) templateSource,
-				Charset.forName(encoding));
+		return MappedFiles.newReader((Path) templateSource,
+				Charset.forName(encoding), CodingErrorAction.REPORT);
 	}
 
 	@Override
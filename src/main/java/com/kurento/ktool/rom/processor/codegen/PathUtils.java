@@ -1,21 +1,17 @@
 package com.kurento.ktool.rom.processor.codegen;
 
-import static java.nio.file.FileVisitResult.CONTINUE;
-
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,53 +21,6 @@ import java.util.Objects;
 
 public class PathUtils {
 
-	public static class Finder extends SimpleFileVisitor<Path> {
-
-		private final PathMatcher matcher;
-		private List<Path> paths = new ArrayList<>();
-
-		Finder(String pattern) {
-			matcher = FileSystems.getDefault()
-					.getPathMatcher("glob:" + pattern);
-		}
-
-		// Compares the glob pattern against
-		// the file or directory name.
-		void find(Path file) {
-			Path name = file.getFileName();
-			if (name != null && matcher.matches(name)) {
-				paths.add(file);
-			}
-		}
-
-		// Invoke the pattern matching
-		// method on each file.
-		@Override
-		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-			find(file);
-			return CONTINUE;
-		}
-
-		// Invoke the pattern matching
-		// method on each directory.
-		@Override
-		public FileVisitResult preVisitDirectory(Path dir,
-				BasicFileAttributes attrs) {
-			find(dir);
-			return CONTINUE;
-		}
-
-		@Override
-		public FileVisitResult visitFileFailed(Path file, IOException exc) {
-			System.err.println(exc);
-			return CONTINUE;
-		}
-
-		public List<Path> getPaths() {
-			return paths;
-		}
-	}
-
 	public static Path getPathInClasspath(URL resource) throws IOException,
 			URISyntaxException {
 
@@ -92,9 +41,18 @@ public class PathUtils {
 		String entryName = s.substring(separator + 2);
 		URI fileURI = URI.create(s.substring(0, separator));
 
-		FileSystem fs = FileSystems.newFileSystem(fileURI,
-				Collections.<String, Object> emptyMap());
-		return fs.getPath(entryName);
+		return getFileSystem(fileURI).getPath(entryName);
+	}
+
+	private static synchronized FileSystem getFileSystem(URI fileURI)
+			throws IOException {
+		// Several template sets can be loaded from the same jar
+		try {
+			return FileSystems.getFileSystem(fileURI);
+		} catch (FileSystemNotFoundException e) {
+			return FileSystems.newFileSystem(fileURI,
+					Collections.<String, Object> emptyMap());
+		}
 	}
 
 	public static void delete(Path folder, List<String> noDeleteFiles)
@@ -104,10 +62,19 @@ public class PathUtils {
 
 	public static List<Path> getPaths(String[] pathNames, String globPattern)
 			throws IOException {
+		return getPaths(Paths.get(""), pathNames, globPattern);
+	}
+
+	/**
+	 * @param baseDir
+	 *            directory used to resolve relative path names
+	 */
+	public static List<Path> getPaths(Path baseDir, String[] pathNames,
+			String globPattern) throws IOException {
 
 		List<Path> paths = new ArrayList<Path>();
 		for (String pathName : pathNames) {
-			Path path = Paths.get(pathName);
+			Path path = baseDir.resolve(pathName);
 			if (Files.exists(path)) {
 				paths.addAll(searchFiles(path, globPattern));
 			}
@@ -119,12 +86,9 @@ public class PathUtils {
 			throws IOException {
 
 		if (Files.isDirectory(path)) {
-			Finder finder = new Finder(globPattern);
-			Files.walkFileTree(path, finder);
-			return finder.getPaths();
+			return DirectoryWalker.find(path, globPattern);
 		} else {
-			PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
-					"glob:" + globPattern);
+			PathMatcher matcher = DirectoryWalker.getMatcher(globPattern);
 
 			if (matcher.matches(path.getFileName())) {
 				return Arrays.asList(path);
@@ -135,58 +99,60 @@ public class PathUtils {
 	}
 
 	public static void deleteRecursive(Path path) throws IOException {
-		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-			@Override
-			public FileVisitResult visitFile(Path file,
-					BasicFileAttributes attrs) throws IOException {
-				Files.delete(file);
-				return FileVisitResult.CONTINUE;
-			}
-
-			@Override
-			public FileVisitResult visitFileFailed(Path file, IOException exc)
-					throws IOException {
-				Files.delete(file);
-				return FileVisitResult.CONTINUE;
-			}
-
-			@Override
-			public FileVisitResult postVisitDirectory(Path dir, IOException exc)
-					throws IOException {
-				if (exc == null) {
-					Files.delete(dir);
-					return FileVisitResult.CONTINUE;
-				} else {
-					throw exc;
-				}
-			}
-		});
+		DirectoryWalker.delete(path, path, Collections.<String> emptyList());
 	}
 
 	public static void delete(Path basePath, Path path,
 			List<String> noDeleteFiles) throws IOException {
+		DirectoryWalker.delete(basePath, path, noDeleteFiles);
+	}
 
-		Path relativePath = basePath.relativize(path);
-
-		if (noDeleteFiles.contains(relativePath.toString())) {
-			return;
-		}
+	/**
+	 * Deletes some files of a folder, and then their parent directories that
+	 * become empty. Files and directories in the no delete list (or inside
+	 * them) are kept.
+	 *
+	 * @param fileNames
+	 *            names of the files, relative to the folder
+	 * @return the names of the files deleted
+	 */
+	public static List<String> deleteFiles(Path folder,
+			List<String> fileNames, List<String> noDeleteFiles)
+			throws IOException {
 
-		if (Files.isDirectory(path)) {
+		List<String> deletedFiles = new ArrayList<String>();
 
-			try (DirectoryStream<Path> directoryStream = Files
-					.newDirectoryStream(path)) {
-				for (Path c : directoryStream) {
-					delete(basePath, c, noDeleteFiles);
+		for (String fileName : fileNames) {
+			Path file = folder.resolve(fileName);
+			if (isInNoDeleteFiles(folder, file, noDeleteFiles)
+					|| !Files.deleteIfExists(file)) {
+				continue;
+			}
+			deletedFiles.add(fileName);
+
+			for (Path dir = file.getParent(); dir != null
+					&& dir.startsWith(folder) && !dir.equals(folder); dir = dir
+					.getParent()) {
+				if (noDeleteFiles.contains(folder.relativize(dir).toString())
+						|| !isEmptyDir(dir)) {
+					break;
 				}
+				Files.delete(dir);
 			}
+		}
+
+		return deletedFiles;
+	}
 
-			if (isEmptyDir(path)) {
-				Files.delete(path);
+	private static boolean isInNoDeleteFiles(Path folder, Path file,
+			List<String> noDeleteFiles) {
+		for (Path path = file; path != null && !path.equals(folder); path = path
+				.getParent()) {
+			if (noDeleteFiles.contains(folder.relativize(path).toString())) {
+				return true;
 			}
-		} else {
-			Files.delete(path);
 		}
+		return false;
 	}
 
 	public static boolean isEmptyDir(Path path) throws IOException {
@@ -0,0 +1,136 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import freemarker.template.Configuration;
+
+/**
+ * State kept in memory between several executions of the processor in the
+ * same JVM: the resolved dependency models and the FreeMarker configurations
+ * (and so the parsed templates) of each templates folder.
+ *
+ * Dependency models are only reused while their kmd files keep the same
+ * size and modification time. Templates are checked for changes each time
+ * they are used.
+ *
+ * An instance can be shared by processors executed concurrently.
+ */
+public class ProcessorCache {
+
+	private static final int MAX_DEPENDENCY_SETS = 8;
+
+	private final Map<List<String>, ModelManager> dependencies = new LinkedHashMap<List<String>, ModelManager>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = -2914335781165393104L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<List<String>, ModelManager> eldest) {
+			return size() > MAX_DEPENDENCY_SETS;
+		}
+	};
+
+	private final Map<Path, Configuration> configurations = new HashMap<Path, Configuration>();
+
+	/**
+	 * @return the resolved models loaded from the given kmd files, or null if
+	 *         they aren't cached or any of the files has changed since
+	 */
+	public synchronized ModelManager getDependencies(List<Path> kmdFiles)
+			throws IOException {
+		return dependencies.get(createKey(kmdFiles));
+	}
+
+	/**
+	 * Looks for the cached models loaded from the biggest subset of the given
+	 * kmd files, so they are reused when the dependencies of a module are the
+	 * ones of another module plus some more (for example, core and elements
+	 * are reused by a module that also depends on filters).
+	 *
+	 * @param missingKmdFiles
+	 *            list where the files not loaded in the returned models are
+	 *            added
+	 * @return the resolved models, or null if no subset is cached
+	 */
+	public synchronized ModelManager getDependencies(List<Path> kmdFiles,
+			List<Path> missingKmdFiles) throws IOException {
+
+		List<String> key = createKey(kmdFiles);
+
+		List<String> subsetKey = null;
+		for (List<String> cachedKey : dependencies.keySet()) {
+			if (key.containsAll(cachedKey)
+					&& (subsetKey == null || cachedKey.size() > subsetKey
+							.size())) {
+				subsetKey = cachedKey;
+			}
+		}
+
+		for (int i = 0; i < kmdFiles.size(); i++) {
+			if (subsetKey == null || !subsetKey.contains(key.get(i))) {
+				missingKmdFiles.add(kmdFiles.get(i));
+			}
+		}
+
+		return subsetKey != null ? dependencies.get(subsetKey) : null;
+	}
+
+	public synchronized void putDependencies(List<Path> kmdFiles,
+			ModelManager modelManager) throws IOException {
+		dependencies.put(createKey(kmdFiles), modelManager);
+	}
+
+	/**
+	 * @return the FreeMarker configuration used to load the templates of the
+	 *         given folder
+	 */
+	public synchronized Configuration getConfiguration(Path templatesFolder)
+			throws IOException {
+
+		Configuration cfg = configurations.get(templatesFolder);
+
+		if (cfg == null) {
+			cfg = CodeGen.createConfiguration(templatesFolder);
+			// Templates are cached for the whole life of the JVM, so changes
+			// have to be detected on every use
+			cfg.setTemplateUpdateDelay(0);
+			configurations.put(templatesFolder, cfg);
+		}
+
+		return cfg;
+	}
+
+	/**
+	 * Forgets the parsed templates, so they are loaded again on next use.
+	 */
+	public synchronized void clearTemplates() {
+		for (Configuration cfg : configurations.values()) {
+			cfg.clearTemplateCache();
+		}
+	}
+
+	/**
+	 * @return a key of the kmd files that changes when any of them is
+	 *         modified, as their path, size and modification time
+	 */
+	static List<String> createKey(List<Path> kmdFiles) throws IOException {
+
+		List<String> key = new ArrayList<String>();
+
+		for (Path kmdFile : kmdFiles) {
+			key.add(kmdFile.toAbsolutePath().normalize() + ":"
+					+ Files.size(kmdFile) + ":"
+					+ Files.getLastModifiedTime(kmdFile).toMillis());
+		}
+
+		return key;
+	}
+}
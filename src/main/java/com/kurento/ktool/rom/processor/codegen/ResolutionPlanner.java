@@ -0,0 +1,214 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.kurento.ktool.rom.processor.model.Import;
+import com.kurento.ktool.rom.processor.model.Model;
+
+/**
+ * Plans the resolution of the models of a manager. The graph of imports
+ * between them is split in strongly connected components (Tarjan's
+ * algorithm), so all the cycles are found before resolving anything, and the
+ * models are grouped in levels: the models of a level only import models of
+ * previous levels, so they can be resolved at the same time.
+ */
+class ResolutionPlanner {
+
+	private final List<Model> models;
+	private final Map<Model, List<Model>> imports = new IdentityHashMap<Model, List<Model>>();
+	private final List<Model> importedDependencies = new ArrayList<Model>();
+
+	private int index;
+	private final Map<Model, Integer> indexes = new IdentityHashMap<Model, Integer>();
+	private final Map<Model, Integer> lowLinks = new IdentityHashMap<Model, Integer>();
+	private final Deque<Model> stack = new ArrayDeque<Model>();
+	private final Map<Model, Boolean> onStack = new IdentityHashMap<Model, Boolean>();
+	private final List<List<Model>> components = new ArrayList<List<Model>>();
+
+	ResolutionPlanner(ModelManager modelManager, Collection<Model> models) {
+
+		// Sorted so that plans and errors don't depend on the loading order
+		this.models = new ArrayList<Model>(models);
+		Collections.sort(this.models, new Comparator<Model>() {
+			@Override
+			public int compare(Model m1, Model m2) {
+				return m1.getName().compareTo(m2.getName());
+			}
+		});
+
+		for (Model model : this.models) {
+			imports.put(model, new ArrayList<Model>());
+		}
+
+		for (Model model : this.models) {
+			for (Import importInfo : model.getImportsToResolve()) {
+				Model importedModel = modelManager.getModel(
+						importInfo.getName(), importInfo.getVersion());
+				// Missing imports are reported when resolving the model
+				if (importedModel == null) {
+					continue;
+				}
+				if (imports.containsKey(importedModel)) {
+					imports.get(model).add(importedModel);
+				} else if (!importedDependencies.contains(importedModel)) {
+					importedDependencies.add(importedModel);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the models of the dependencies of the manager imported by its
+	 *         models
+	 */
+	List<Model> getImportedDependencies() {
+		return importedDependencies;
+	}
+
+	/**
+	 * @return the models grouped in levels, in the order they have to be
+	 *         resolved
+	 * @throws KurentoRomProcessorException
+	 *             listing a cycle for every group of models that import each
+	 *             other
+	 */
+	List<List<Model>> plan() {
+
+		for (Model model : models) {
+			if (!indexes.containsKey(model)) {
+				findComponents(model);
+			}
+		}
+
+		checkCycles();
+
+		// Components are found after the components they import
+		Map<Model, Integer> levels = new IdentityHashMap<Model, Integer>();
+		List<List<Model>> plan = new ArrayList<List<Model>>();
+
+		for (List<Model> component : components) {
+			Model model = component.get(0);
+
+			int level = 0;
+			for (Model importedModel : imports.get(model)) {
+				level = Math.max(level, levels.get(importedModel) + 1);
+			}
+			levels.put(model, level);
+
+			while (plan.size() <= level) {
+				plan.add(new ArrayList<Model>());
+			}
+			plan.get(level).add(model);
+		}
+
+		return plan;
+	}
+
+	private void findComponents(Model model) {
+
+		indexes.put(model, index);
+		lowLinks.put(model, index);
+		index++;
+		stack.push(model);
+		onStack.put(model, true);
+
+		for (Model importedModel : imports.get(model)) {
+			if (!indexes.containsKey(importedModel)) {
+				findComponents(importedModel);
+				lowLinks.put(model, Math.min(lowLinks.get(model),
+						lowLinks.get(importedModel)));
+			} else if (onStack.containsKey(importedModel)) {
+				lowLinks.put(model, Math.min(lowLinks.get(model),
+						indexes.get(importedModel)));
+			}
+		}
+
+		if (lowLinks.get(model).equals(indexes.get(model))) {
+			List<Model> component = new ArrayList<Model>();
+			Model member;
+			do {
+				member = stack.pop();
+				onStack.remove(member);
+				component.add(member);
+			} while (member != model);
+			components.add(component);
+		}
+	}
+
+	private void checkCycles() {
+
+		StringBuilder cycles = new StringBuilder();
+
+		for (List<Model> component : components) {
+			Model model = component.get(0);
+			if (component.size() > 1 || imports.get(model).contains(model)) {
+				Model first = Collections.min(component,
+						new Comparator<Model>() {
+							@Override
+							public int compare(Model m1, Model m2) {
+								return m1.getName().compareTo(m2.getName());
+							}
+						});
+
+				if (cycles.length() > 0) {
+					cycles.append('\n');
+				}
+				cycles.append("Found a dependency cycle in plugin '")
+						.append(first.getName()).append("': ")
+						.append(getCyclePath(first, component));
+			}
+		}
+
+		if (cycles.length() > 0) {
+			throw new KurentoRomProcessorException(cycles.toString());
+		}
+	}
+
+	private String getCyclePath(Model first, List<Model> component) {
+
+		List<Model> path = new ArrayList<Model>();
+		path.add(first);
+		findPathTo(first, first, component, path,
+				new IdentityHashMap<Model, Boolean>());
+
+		StringBuilder sb = new StringBuilder();
+		for (Model model : path) {
+			if (sb.length() > 0) {
+				sb.append(" -> ");
+			}
+			sb.append(model.getName());
+		}
+		return sb.toString();
+	}
+
+	private boolean findPathTo(Model target, Model current,
+			List<Model> component, List<Model> path, Map<Model, Boolean> visited) {
+
+		for (Model importedModel : imports.get(current)) {
+			if (importedModel == target) {
+				path.add(target);
+				return true;
+			}
+
+			if (!visited.containsKey(importedModel)
+					&& component.contains(importedModel)) {
+				visited.put(importedModel, true);
+				path.add(importedModel);
+				if (findPathTo(target, importedModel, component, path, visited)) {
+					return true;
+				}
+				path.remove(path.size() - 1);
+			}
+		}
+
+		return false;
+	}
+}
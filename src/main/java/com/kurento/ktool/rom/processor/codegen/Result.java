@@ -1,17 +1,28 @@
 package com.kurento.ktool.rom.processor.codegen;
 
+import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class Result {
 
 	private boolean success;
 	private List<Error> errors;
+	private Map<String, byte[]> generatedFiles = Collections.emptyMap();
 
 	public Result() {
 		this.success = true;
 	}
 
+	public Result(Map<String, byte[]> generatedFiles) {
+		this();
+		if (generatedFiles != null) {
+			this.generatedFiles = Collections.unmodifiableMap(generatedFiles);
+		}
+	}
+
 	public Result(List<Error> errors) {
 		this.errors = errors;
 		this.success = false;
@@ -26,13 +37,26 @@ public class Result {
 	}
 
 	public void showErrorsInConsole() {
-		System.out.println("Errors:");
+		showErrors(System.out);
+	}
+
+	public void showErrors(PrintStream out) {
+		out.println("Errors:");
 		for (Error error : errors) {
-			System.out.println(error);
+			out.println(error);
 		}
 	}
 
 	public List<Error> getErrors() {
 		return errors;
 	}
+
+	/**
+	 * @return the content of the files generated in memory mode, sorted by
+	 *         path. Paths use '/' as separator and include the codegen dir,
+	 *         if it was set. Empty if the files were written to disk.
+	 */
+	public Map<String, byte[]> getGeneratedFiles() {
+		return generatedFiles;
+	}
 }
@@ -0,0 +1,114 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import freemarker.template.ObjectWrapper;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleSequence;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Data model of a template: the model and the element being generated, on
+ * top of the variables shared by all the templates of a generation.
+ *
+ * Shared variables are wrapped once, when they are created, so they can be
+ * read concurrently. The model and the element are wrapped each time they are
+ * read, so the object wrapper sees which of them each template uses.
+ */
+class TemplateRoot implements TemplateHashModel {
+
+	private static class SharedVariables implements TemplateHashModel {
+
+		private final Map<String, TemplateModel> variables;
+
+		SharedVariables(Map<String, TemplateModel> variables) {
+			this.variables = Collections.unmodifiableMap(variables);
+		}
+
+		@Override
+		public TemplateModel get(String key) {
+			return variables.get(key);
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return variables.isEmpty();
+		}
+	}
+
+	private final TemplateHashModel shared;
+	private final ObjectWrapper objectWrapper;
+	private final String modelKey;
+	private final Object model;
+	private final String elementKey;
+	private final Object element;
+
+	TemplateRoot(TemplateHashModel shared, ObjectWrapper objectWrapper,
+			String modelKey, Object model, String elementKey, Object element) {
+		this.shared = shared;
+		this.objectWrapper = objectWrapper;
+		this.modelKey = modelKey;
+		this.model = model;
+		this.elementKey = elementKey;
+		this.element = element;
+	}
+
+	/**
+	 * Wraps the variables, and their maps and lists recursively, so they are
+	 * not modified when read.
+	 */
+	static TemplateHashModel createShared(Map<String, ?> variables,
+			ObjectWrapper objectWrapper) throws TemplateModelException {
+
+		Map<String, TemplateModel> wrapped = new HashMap<String, TemplateModel>();
+		for (Map.Entry<String, ?> variable : variables.entrySet()) {
+			wrapped.put(variable.getKey(),
+					wrap(variable.getValue(), objectWrapper));
+		}
+		return new SharedVariables(wrapped);
+	}
+
+	private static TemplateModel wrap(Object value, ObjectWrapper objectWrapper)
+			throws TemplateModelException {
+
+		if (value instanceof Map) {
+			SimpleHash hash = new SimpleHash(objectWrapper);
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				hash.put(entry.getKey().toString(),
+						wrap(entry.getValue(), objectWrapper));
+			}
+			return hash;
+		}
+
+		if (value instanceof List) {
+			SimpleSequence sequence = new SimpleSequence(objectWrapper);
+			for (Object element : (List<?>) value) {
+				sequence.add(wrap(element, objectWrapper));
+			}
+			return sequence;
+		}
+
+		return objectWrapper.wrap(value);
+	}
+
+	@Override
+	public TemplateModel get(String key) throws TemplateModelException {
+		if (key.equals(elementKey)) {
+			return objectWrapper.wrap(element);
+		}
+		if (key.equals(modelKey)) {
+			return objectWrapper.wrap(model);
+		}
+		return shared.get(key);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return false;
+	}
+}
@@ -0,0 +1,163 @@
+package com.kurento.ktool.rom.processor.codegen;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches files and directory trees for changes. Bursts of events (as the
+ * ones produced by editors when saving a file) are reported together once no
+ * more events are received for a while.
+ */
+public class Watcher implements Closeable {
+
+	private static final long DEBOUNCE_MILLIS = 300;
+
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> watchedDirs = new HashMap<WatchKey, Path>();
+	private final Set<Path> watchedTrees = new HashSet<Path>();
+	private final Set<Path> watchedFiles = new HashSet<Path>();
+	private final List<Path> ignoredPaths = new ArrayList<Path>();
+
+	/**
+	 * @param paths
+	 *            files and directories to watch. Directories are watched
+	 *            recursively.
+	 * @param ignoredPaths
+	 *            paths whose changes are not reported, as the directories
+	 *            where code is generated
+	 */
+	public Watcher(List<Path> paths, List<Path> ignoredPaths)
+			throws IOException {
+
+		this.watchService = FileSystems.getDefault().newWatchService();
+		for (Path ignoredPath : ignoredPaths) {
+			this.ignoredPaths.add(ignoredPath.toAbsolutePath().normalize());
+		}
+
+		for (Path path : paths) {
+			path = path.toAbsolutePath().normalize();
+			if (Files.isDirectory(path)) {
+				registerTree(path);
+			} else if (path.getParent() != null
+					&& Files.isDirectory(path.getParent())) {
+				watchedFiles.add(path);
+				register(path.getParent());
+			}
+		}
+	}
+
+	/**
+	 * Blocks until changes are detected.
+	 *
+	 * @return the changed paths
+	 */
+	public Set<Path> waitForChanges() throws InterruptedException, IOException {
+
+		Set<Path> changes = new TreeSet<Path>();
+
+		while (changes.isEmpty()) {
+			WatchKey key = watchService.take();
+			while (key != null) {
+				processEvents(key, changes);
+				key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		return changes;
+	}
+
+	private void processEvents(WatchKey key, Set<Path> changes)
+			throws IOException {
+
+		Path dir = watchedDirs.get(key);
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+
+			if (event.kind() == OVERFLOW) {
+				changes.add(dir);
+				continue;
+			}
+
+			Path path = dir.resolve((Path) event.context());
+
+			if (isIgnored(path)) {
+				continue;
+			}
+
+			if (watchedTrees.contains(dir)) {
+				if (event.kind() == ENTRY_CREATE
+						&& Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+					registerTree(path);
+				}
+				changes.add(path);
+			} else if (watchedFiles.contains(path)) {
+				changes.add(path);
+			}
+		}
+
+		if (!key.reset()) {
+			watchedDirs.remove(key);
+			watchedTrees.remove(dir);
+		}
+	}
+
+	private boolean isIgnored(Path path) {
+		for (Path ignoredPath : ignoredPaths) {
+			if (path.startsWith(ignoredPath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void registerTree(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attrs) throws IOException {
+
+				if (isIgnored(dir)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				register(dir);
+				watchedTrees.add(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void register(Path dir) throws IOException {
+		WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE,
+				ENTRY_MODIFY);
+		watchedDirs.put(key, dir);
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+}
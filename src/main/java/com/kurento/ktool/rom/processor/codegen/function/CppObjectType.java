@@ -1,8 +1,12 @@
 package com.kurento.ktool.rom.processor.codegen.function;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.kurento.ktool.rom.processor.model.Return;
 import com.kurento.ktool.rom.processor.model.TypeRef;
@@ -12,16 +16,16 @@ import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateMethodModelEx;
 import freemarker.template.TemplateModelException;
 
+/**
+ * Returns the C++ type of a type reference. Type names are cached, so an
+ * instance should be shared by all the templates of a generation.
+ */
 public class CppObjectType implements TemplateMethodModelEx {
 
-	private final Set<String> nativeTypes;
+	private static final Set<String> nativeTypes = Collections
+			.unmodifiableSet(new HashSet<String>(Arrays.asList("float", "int")));
 
-	public CppObjectType() {
-		nativeTypes = new HashSet<String>();
-
-		nativeTypes.add("float");
-		nativeTypes.add("int");
-	}
+	private final ConcurrentMap<TypeSignature, String> typeNames = new ConcurrentHashMap<TypeSignature, String>();
 
 	@Override
 	public Object exec(@SuppressWarnings("rawtypes") List arguments)
@@ -59,6 +63,28 @@ public class CppObjectType implements TemplateMethodModelEx {
 				return "void";
 		}
 
+		TypeSignature signature;
+		if (type instanceof TypeRef) {
+			TypeRef typeRef = (TypeRef) type;
+			signature = new TypeSignature(typeRef.getName(), typeRef.isList(),
+					isParam, prefix, suffix);
+		} else {
+			signature = new TypeSignature(type.toString(), false, isParam,
+					prefix, suffix);
+		}
+
+		String typeName = typeNames.get(signature);
+		if (typeName == null) {
+			typeName = getTypeName(type, isParam, prefix, suffix);
+			typeNames.putIfAbsent(signature, typeName);
+		}
+
+		return typeName;
+	}
+
+	private String getTypeName(Object type, boolean isParam, String prefix,
+			String suffix) {
+
 		if (type instanceof TypeRef) {
 			TypeRef typeRef = (TypeRef) type;
 			if (typeRef.isList()) {
@@ -1,6 +1,8 @@
 package com.kurento.ktool.rom.processor.codegen.function;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.kurento.ktool.rom.processor.model.Return;
 import com.kurento.ktool.rom.processor.model.TypeRef;
@@ -10,8 +12,14 @@ import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateMethodModelEx;
 import freemarker.template.TemplateModelException;
 
+/**
+ * Returns the Java type of a type reference. Type names are cached, so an
+ * instance should be shared by all the templates of a generation.
+ */
 public class JavaObjectType implements TemplateMethodModelEx {
 
+	private final ConcurrentMap<TypeSignature, String> typeNames = new ConcurrentHashMap<TypeSignature, String>();
+
 	@Override
 	public Object exec(@SuppressWarnings("rawtypes") List arguments)
 			throws TemplateModelException {
@@ -38,6 +46,27 @@ public class JavaObjectType implements TemplateMethodModelEx {
 			}
 		}
 
+		TypeSignature signature;
+		if (type instanceof TypeRef) {
+			TypeRef typeRef = (TypeRef) type;
+			signature = new TypeSignature(typeRef.getName(), typeRef.isList(),
+					asObject, "", "");
+		} else {
+			signature = new TypeSignature(type.toString(), false, asObject, "",
+					"");
+		}
+
+		String typeName = typeNames.get(signature);
+		if (typeName == null) {
+			typeName = getTypeName(type, asObject);
+			typeNames.putIfAbsent(signature, typeName);
+		}
+
+		return typeName;
+	}
+
+	private String getTypeName(Object type, boolean asObject) {
+
 		if (type instanceof TypeRef) {
 			TypeRef typeRef = (TypeRef) type;
 			if (typeRef.isList()) {
@@ -12,12 +12,36 @@ import freemarker.ext.beans.StringModel;
 import freemarker.template.TemplateMethodModelEx;
 import freemarker.template.TemplateModelException;
 
+/**
+ * Returns how a type reference is read from and written to JSON in C++. There
+ * are few different results, so they are created once and shared.
+ */
 public class JsonCppTypeData implements TemplateMethodModelEx {
 
-	public class JsonTypeData {
-		String jsonMethod;
-		String jsonValueType;
-		String typeDescription;
+	private static final JsonTypeData LIST = new JsonTypeData("List",
+			"arrayValue", "list");
+	private static final JsonTypeData STRING = new JsonTypeData("String",
+			"stringValue", "string");
+	private static final JsonTypeData INT = new JsonTypeData("Int",
+			"intValue", "integer");
+	private static final JsonTypeData BOOL = new JsonTypeData("Bool",
+			"booleanValue", "boolean");
+	private static final JsonTypeData DOUBLE = new JsonTypeData("Double",
+			"realValue", "double");
+	private static final JsonTypeData OBJECT = new JsonTypeData("Object",
+			"objectValue", "object");
+
+	public static class JsonTypeData {
+		private final String jsonMethod;
+		private final String jsonValueType;
+		private final String typeDescription;
+
+		JsonTypeData(String jsonMethod, String jsonValueType,
+				String typeDescription) {
+			this.jsonMethod = jsonMethod;
+			this.jsonValueType = jsonValueType;
+			this.typeDescription = typeDescription;
+		}
 
 		public String getJsonMethod() {
 			return jsonMethod;
@@ -32,9 +56,6 @@ public class JsonCppTypeData implements TemplateMethodModelEx {
 		}
 	}
 
-	public JsonCppTypeData() {
-	}
-
 	@Override
 	public Object exec(@SuppressWarnings("rawtypes") List arguments)
 			throws TemplateModelException {
@@ -55,58 +76,26 @@ public class JsonCppTypeData implements TemplateMethodModelEx {
 		if (type instanceof TypeRef) {
 			TypeRef typeRef = (TypeRef) type;
 			if (typeRef.isList()) {
-				JsonTypeData data = new JsonTypeData();
-				data.jsonMethod = "List";
-				data.jsonValueType = "arrayValue";
-				data.typeDescription = "list";
-				return data;
+				return LIST;
 			} else if (typeRef.getName().equals("String")) {
-				JsonTypeData data = new JsonTypeData();
-				data.jsonMethod = "String";
-				data.jsonValueType = "stringValue";
-				data.typeDescription = "string";
-				return data;
+				return STRING;
 			} else if (typeRef.getName().equals("int")) {
-				JsonTypeData data = new JsonTypeData();
-				data.jsonMethod = "Int";
-				data.jsonValueType = "intValue";
-				data.typeDescription = "integer";
-				return data;
+				return INT;
 			} else if (typeRef.getName().equals("boolean")) {
-				JsonTypeData data = new JsonTypeData();
-				data.jsonMethod = "Bool";
-				data.jsonValueType = "booleanValue";
-				data.typeDescription = "boolean";
-				return data;
+				return BOOL;
 			} else if (typeRef.getName().equals("double")
 					|| typeRef.getName().equals("float")) {
-				JsonTypeData data = new JsonTypeData();
-				data.jsonMethod = "Double";
-				data.jsonValueType = "realValue";
-				data.typeDescription = "double";
-				return data;
+				return DOUBLE;
 			} else if (typeRef.getType() instanceof ComplexType) {
 				ComplexType complexType = (ComplexType) typeRef.getType();
 
 				if (complexType.getTypeFormat() == TypeFormat.ENUM) {
-					JsonTypeData data = new JsonTypeData();
-					data.jsonMethod = "String";
-					data.jsonValueType = "stringValue";
-					data.typeDescription = "string";
-					return data;
+					return STRING;
 				} else if (complexType.getTypeFormat() == TypeFormat.REGISTER) {
-					JsonTypeData data = new JsonTypeData();
-					data.jsonMethod = "Object";
-					data.jsonValueType = "objectValue";
-					data.typeDescription = "object";
-					return data;
+					return OBJECT;
 				}
 			} else if (typeRef.getType() instanceof RemoteClass) {
-				JsonTypeData data = new JsonTypeData();
-				data.jsonMethod = "String";
-				data.jsonValueType = "stringValue";
-				data.typeDescription = "string";
-				return data;
+				return STRING;
 			}
 
 			throw new TemplateModelException("Unexpected type: " + type);
@@ -1,20 +1,22 @@
 package com.kurento.ktool.rom.processor.codegen.function;
 
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 
-import com.kurento.ktool.rom.processor.model.ComplexType;
-import com.kurento.ktool.rom.processor.model.Method;
-import com.kurento.ktool.rom.processor.model.Param;
-import com.kurento.ktool.rom.processor.model.Property;
 import com.kurento.ktool.rom.processor.model.RemoteClass;
 import com.kurento.ktool.rom.processor.model.Return;
 import com.kurento.ktool.rom.processor.model.Type;
 
 import freemarker.ext.beans.StringModel;
+import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateMethodModelEx;
 import freemarker.template.TemplateModelException;
 
+/**
+ * Returns the dependencies of a remote class, as computed by
+ * {@link RemoteClass#getDependencies()}. If a second argument is true, the
+ * transitive dependencies are returned, and also complex types are accepted.
+ */
 public class RemoteClassDependencies implements TemplateMethodModelEx {
 
 	@Override
@@ -30,60 +32,18 @@ public class RemoteClassDependencies implements TemplateMethodModelEx {
 			}
 		}
 
-		List<Type> types = new LinkedList<Type>();
+		boolean transitive = arguments.size() > 1
+				&& arguments.get(1) instanceof TemplateBooleanModel
+				&& ((TemplateBooleanModel) arguments.get(1)).getAsBoolean();
 
-		if (type instanceof RemoteClass) {
-			RemoteClass remoteClass = (RemoteClass) type;
-
-			if (remoteClass.getConstructor() != null) {
-				addMethodTypes(types, remoteClass.getConstructor());
-			}
-
-			for (Method method : remoteClass.getMethods()) {
-				addMethodTypes(types, method);
-			}
-
-			for (Property property : remoteClass.getProperties()) {
-				addDependency(types, property.getType().getType());
-			}
-
-			if (remoteClass.getExtends() != null)
-				types.remove(remoteClass.getExtends().getType());
-
-			types.remove(remoteClass);
+		if (transitive && type instanceof Type) {
+			return ((Type) type).getTransitiveDependencies();
 		}
 
-		types = removeDuplicates(types);
-
-		return types;
-	}
-
-	private void addDependency(List<Type> dependencies, Type type) {
-		if (type instanceof RemoteClass || type instanceof ComplexType) {
-			dependencies.add(type);
-		}
-	}
-
-	private List<Type> removeDuplicates(List<Type> original) {
-		List<Type> types = new LinkedList<Type>();
-
-		for (Type t : original) {
-			if (!types.contains(t))
-				types.add(t);
-		}
-
-		return types;
-	}
-
-	private void addMethodTypes(List<Type> dependencies, Method method) {
-		for (Param p : method.getParams()) {
-			addDependency(dependencies, p.getType().getType());
+		if (type instanceof RemoteClass) {
+			return ((RemoteClass) type).getDependencies();
 		}
 
-		Return ret = method.getReturn();
-
-		if (ret != null) {
-			addDependency(dependencies, ret.getType().getType());
-		}
+		return Collections.emptyList();
 	}
 }
@@ -1,6 +1,10 @@
 package com.kurento.ktool.rom.processor.codegen.function;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,10 +21,65 @@ import freemarker.template.TemplateModelException;
  */
 public class SphinxLinks implements TemplateMethodModelEx {
 
+	private static final int CACHE_SIZE = 4096;
+
+	private static final Pattern GLOSSARY_TERM_1 = Pattern
+			.compile(":term:`([^`<]*?)`");
+	private static final Pattern GLOSSARY_TERM_2 = Pattern
+			.compile(":term:`([^`<]*?)<([^`]*?)>`");
+	private static final String GLOSSARY_HREF = "<a href=\"http://www.kurento.org/docs/current/glossary.html#term-%s\">%s</a>";
+
+	// TODO: `<text>`, ** and *, other markup...
+	private static final String[][] TO_REPLACE = {
+			{ ":wikipedia:`(.*?),(.*?)`", // Kurento wikipedia, alt
+					"<a href=\"http://$1.wikipedia.org/wiki/$2\">$2</a>" },
+			{ ":wikipedia:`(.*?)<(.*?),(.*?)>`", // Kurento wikipedia
+					"<a href=\"http://$2.wikipedia.org/wiki/$3\">$1</a>" },
+			{ ":java:ref:`([^`]*?)<(.*?)>`", // java ref, alternate title
+					"{@link $2 $1}" }, { ":java:ref:`(.*?)`", // java ref
+					"{@link $1}" },
+			{ ":rom:cls:`([^`]*?)<([^`<]*?)>`", "{@link $2 $1}" },
+			{ ":rom:cls:`([^`]*?)`", "{@link $1}" },
+			{ ":rom:meth:`([^`]*?)<([^`]*?)>`", "{@link #$2 $1}" },
+			{ ":rom:meth:`([^`]*?)`", "{@link #$1}" },
+			{ ":rom:attr:`([^`]*?)<([^`]*?)>`", "{@link #$2 $1}" },
+			{ ":rom:attr:`([^`]*?)`", "{@link #$1}" },
+			{ ":rom:evt:`([^`]*?)<([^`]*?)>`", "{@link $2 $1Event}" },
+			{ ":rom:evt:`([^`]*?)`", "{@link $1Event}" },
+			{ ":author:", "@author" }, // author
+			{ ":since:", "@since" }, // since
+			{ "``([^`]*?)``", "<code>$1</code>" },
+			{ "\\.\\.\\s+todo::(.*?)", "<hr/><b>TODO</b>$1" },
+			{ "\\.\\.\\s+note::(.*?)", "<hr/><b>Note</b>$1" }, };
+
+	/**
+	 * Text that has to be in a string for each pattern of {@link #TO_REPLACE}
+	 * to match, so patterns are only run on strings that contain their markup.
+	 */
+	private static final String[] TO_REPLACE_MARKS = { ":wikipedia:`",
+			":wikipedia:`", ":java:ref:`", ":java:ref:`", ":rom:cls:`",
+			":rom:cls:`", ":rom:meth:`", ":rom:meth:`", ":rom:attr:`",
+			":rom:attr:`", ":rom:evt:`", ":rom:evt:`", ":author:", ":since:",
+			"``", "..", ".." };
+
+	private static final Pattern[] TO_REPLACE_PATTERNS = compile(TO_REPLACE);
+
+	private static final Map<String, String> translations = Collections
+			.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, String> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
 	/**
 	 * 
 	 * Takes a string and replaces occurrences of rst/sphinx with kurento domain
-	 * markup with javadoc equivalents.
+	 * markup with javadoc equivalents. Translations are cached, as the same
+	 * docs are translated by several templates.
 	 * 
 	 * @param arguments
 	 *            A list of arguments from the call. It only processes the first
@@ -33,54 +92,59 @@ public class SphinxLinks implements TemplateMethodModelEx {
 	public Object exec(List arguments)
 			throws TemplateModelException {
 
-		Pattern glossary_term_1 = Pattern.compile(":term:`([^`<]*?)`");
-		Pattern glossary_term_2 = Pattern
-				.compile(":term:`([^`<]*?)<([^`]*?)>`");
-		String glossary_href = "<a href=\"http://www.kurento.org/docs/current/glossary.html#term-%s\">%s</a>";
-		// TODO: `<text>`, ** and *, other markup...
-		String[][] toReplace = {
-				{ ":wikipedia:`(.*?),(.*?)`", // Kurento wikipedia, alt
-						"<a href=\"http://$1.wikipedia.org/wiki/$2\">$2</a>" },
-				{ ":wikipedia:`(.*?)<(.*?),(.*?)>`", // Kurento wikipedia
-						"<a href=\"http://$2.wikipedia.org/wiki/$3\">$1</a>" },
-				{ ":java:ref:`([^`]*?)<(.*?)>`", // java ref, alternate title
-						"{@link $2 $1}" }, { ":java:ref:`(.*?)`", // java ref
-						"{@link $1}" },
-				{ ":rom:cls:`([^`]*?)<([^`<]*?)>`", "{@link $2 $1}" },
-				{ ":rom:cls:`([^`]*?)`", "{@link $1}" },
-				{ ":rom:meth:`([^`]*?)<([^`]*?)>`", "{@link #$2 $1}" },
-				{ ":rom:meth:`([^`]*?)`", "{@link #$1}" },
-				{ ":rom:attr:`([^`]*?)<([^`]*?)>`", "{@link #$2 $1}" },
-				{ ":rom:attr:`([^`]*?)`", "{@link #$1}" },
-				{ ":rom:evt:`([^`]*?)<([^`]*?)>`", "{@link $2 $1Event}" },
-				{ ":rom:evt:`([^`]*?)`", "{@link $1Event}" },
-				{ ":author:", "@author" }, // author
-				{ ":since:", "@since" }, // since
-				{ "``([^`]*?)``", "<code>$1</code>" },
-				{ "\\.\\.\\s+todo::(.*?)", "<hr/><b>TODO</b>$1" },
-				{ "\\.\\.\\s+note::(.*?)", "<hr/><b>Note</b>$1" },
-		};
-
 		String typeName = arguments.get(0).toString();
-		String res = typeName;
 
-		res = translate(res, toReplace);
-		Matcher m2 = glossary_term_2.matcher(res);
+		String res = translations.get(typeName);
+		if (res == null) {
+			res = translateDoc(typeName);
+			translations.put(typeName, res);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Translates a doc without looking it up in the cache.
+	 */
+	String translateDoc(String text) {
+
+		String res = text;
+
+		for (int i = 0; i < TO_REPLACE_PATTERNS.length; i++) {
+			if (res.contains(TO_REPLACE_MARKS[i])) {
+				res = TO_REPLACE_PATTERNS[i].matcher(res).replaceAll(
+						TO_REPLACE[i][1]);
+			}
+		}
+
+		if (!res.contains(":term:`")) {
+			return res;
+		}
+
+		Matcher m2 = GLOSSARY_TERM_2.matcher(res);
 		while (m2.find()) {
 			res = res.substring(0, m2.start() - 1)
-					+ String.format(glossary_href, make_id(m2.group(2)),
+					+ String.format(GLOSSARY_HREF, make_id(m2.group(2)),
 							m2.group(1)) + res.substring(m2.end() + 1);
 		}
-		m2 = glossary_term_1.matcher(res);
+		m2 = GLOSSARY_TERM_1.matcher(res);
 		while (m2.find()) {
 			res = res.substring(0, m2.start())
-					+ String.format(glossary_href, make_id(m2.group(1)),
+					+ String.format(GLOSSARY_HREF, make_id(m2.group(1)),
 							m2.group(1)) + res.substring(m2.end());
 		}
 
 		return res;
 	}
 
+	private static Pattern[] compile(String[][] patterns) {
+		Pattern[] compiled = new Pattern[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			compiled[i] = Pattern.compile("(?ms)" + patterns[i][0]);
+		}
+		return compiled;
+	}
+
 	/**
 	 * Clone the python unicode translate method in legacy languages younger
 	 * than python. python docutils is public domain.
@@ -120,21 +184,39 @@ public class SphinxLinks implements TemplateMethodModelEx {
 		// if not isinstance(id, unicode):
 		// id = id.decode()
 		// id = id.translate(_non_id_translate_digraphs)
-		id = translate(id, _non_id_translate_digraphs);
 		// id = id.translate(_non_id_translate)
-		id = translate(id, _non_id_translate);
-		// # get rid of non-ascii characters.
-		// # 'ascii' lowercase to prevent problems with turkish locale.
-		// id = unicodedata.normalize('NFKD', id).\
-		// encode('ascii', 'ignore').decode('ascii')
 		// # shrink runs of whitespace and replace by hyphen
 		// id = _non_id_chars.sub('-', ' '.join(id.split()))
-		id = id.replaceAll("\\s+", " ").replaceAll(_non_id_chars,
-				"-");
+		// All of them in a single pass over the chars
+		StringBuilder sb = new StringBuilder(id.length());
+		boolean inNonIdChars = false;
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			String translation = c < 128 ? null : NON_ID_TRANSLATIONS.get(c);
+			if (translation != null) {
+				sb.append(translation);
+				inNonIdChars = false;
+			} else if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+				sb.append(c);
+				inNonIdChars = false;
+			} else if (!inNonIdChars) {
+				sb.append('-');
+				inNonIdChars = true;
+			}
+		}
 		// id = _non_id_at_ends.sub('', id)
-		id = id.replaceAll(_non_id_at_ends, "");
+		int start = 0;
+		while (start < sb.length()
+				&& (sb.charAt(start) == '-' || sb.charAt(start) >= '0'
+						&& sb.charAt(start) <= '9')) {
+			start++;
+		}
+		int end = sb.length();
+		while (end > start && sb.charAt(end - 1) == '-') {
+			end--;
+		}
 		// return str(id)
-		return id;
+		return sb.substring(start, end);
 
 	}
 
@@ -142,7 +224,7 @@ public class SphinxLinks implements TemplateMethodModelEx {
 	String _non_id_chars = "[^a-z0-9]+";
 	//_non_id_at_ends = re.compile('^[-0-9]+|-+$')
 	String _non_id_at_ends = "^[-0-9]+|-+$";
-	String[][] _non_id_translate ={
+	static final String[][] _non_id_translate ={
 			{"\u00f8", "o"}, // o with stroke
 			{"\u0111", "d"}, // d with stroke
 			{"\u0127", "h"}, // h with stroke
@@ -179,13 +261,23 @@ public class SphinxLinks implements TemplateMethodModelEx {
 	};
 
 
-	String[][] _non_id_translate_digraphs = { { "\u00df", "sz" }, // ligature sz
+	static final String[][] _non_id_translate_digraphs = { { "\u00df", "sz" }, // ligature sz
 		    {"\u00e6", "ae"},      // ae
 		    {"\u0153", "oe"},     // ligature oe
 		    {"\u0238", "db"},      // db digraph
 		    {"\u0239", "qp"}      // qp digraph
 		};
 
+	private static final Map<Character, String> NON_ID_TRANSLATIONS = new HashMap<Character, String>();
+	static {
+		for (String[] each : _non_id_translate_digraphs) {
+			NON_ID_TRANSLATIONS.put(each[0].charAt(0), each[1]);
+		}
+		for (String[] each : _non_id_translate) {
+			NON_ID_TRANSLATIONS.put(each[0].charAt(0), each[1]);
+		}
+	}
+
 
 
 }
@@ -0,0 +1,49 @@
+package com.kurento.ktool.rom.processor.codegen.function;
+
+/**
+ * Key of the type names cached by the type functions: the name of the type
+ * and the arguments that change how it is rendered.
+ */
+class TypeSignature {
+
+	private final String name;
+	private final boolean list;
+	private final boolean flag;
+	private final String prefix;
+	private final String suffix;
+
+	TypeSignature(String name, boolean list, boolean flag, String prefix,
+			String suffix) {
+		this.name = name;
+		this.list = list;
+		this.flag = flag;
+		this.prefix = prefix;
+		this.suffix = suffix;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (flag ? 1231 : 1237);
+		result = prime * result + (list ? 1231 : 1237);
+		result = prime * result + name.hashCode();
+		result = prime * result + prefix.hashCode();
+		result = prime * result + suffix.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof TypeSignature)) {
+			return false;
+		}
+		TypeSignature other = (TypeSignature) obj;
+		return flag == other.flag && list == other.list
+				&& name.equals(other.name) && prefix.equals(other.prefix)
+				&& suffix.equals(other.suffix);
+	}
+}
@@ -7,12 +7,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.lang.reflect.Method;
-import java.nio.file.Files;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Path;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.kurento.ktool.rom.processor.codegen.MappedFiles;
 import com.kurento.ktool.rom.processor.model.Model;
 import com.kurento.ktool.rom.processor.model.Param;
 import com.kurento.ktool.rom.processor.model.Property;
@@ -27,6 +30,8 @@ public class JsonModelSaverLoader {
 		return INSTANCE;
 	}
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	private Gson gson;
 
 	private JsonModelSaverLoader() {
@@ -42,7 +47,10 @@ public class JsonModelSaverLoader {
 
 	public Model loadFromFile(Path file) throws FileNotFoundException,
 			IOException {
-		return loadFromInputStream(Files.newInputStream(file));
+		try (Reader reader = MappedFiles.newReader(file, UTF8,
+				CodingErrorAction.REPLACE)) {
+			return gson.fromJson(reader, Model.class);
+		}
 	}
 
 	public Model loadFromClasspath(String resourceName) throws IOException {
@@ -50,21 +58,15 @@ public class JsonModelSaverLoader {
 				resourceName));
 	}
 
+	/**
+	 * Builds the model while the stream is parsed, without keeping a copy of
+	 * its text.
+	 */
 	private Model loadFromInputStream(InputStream is) throws IOException {
-		String modelString = loadTextFromInputStream(is);
-		Model model = gson.fromJson(modelString, Model.class);
-		return model;
-	}
-
-	private String loadTextFromInputStream(InputStream is) throws IOException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is));
-		StringBuilder sb = new StringBuilder();
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			sb.append(line).append("\n");
+		try (Reader reader = new BufferedReader(new InputStreamReader(is,
+				UTF8))) {
+			return gson.fromJson(reader, Model.class);
 		}
-
-		return sb.toString();
 	}
 
 	public void writeToFile(Model model, File file)
@@ -11,6 +11,17 @@ public class Code {
 	private Map<String, Map<String, String>> api;
 	private Map<String, String> implementation;
 
+	public Code() {
+	}
+
+	public Code(Map<String, Map<String, String>> kmd,
+			Map<String, Map<String, String>> api,
+			Map<String, String> implementation) {
+		this.kmd = kmd;
+		this.api = api;
+		this.implementation = implementation;
+	}
+
 	public void completeInfo(Model model, ModelManager modelManager) {
 
 		if (api == null) {
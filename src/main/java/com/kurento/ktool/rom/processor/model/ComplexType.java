@@ -1,7 +1,10 @@
 package com.kurento.ktool.rom.processor.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -16,7 +19,8 @@ public class ComplexType extends Type {
 	@SerializedName("extends")
 	private TypeRef extendsProp;
 	private List<Property> properties = new ArrayList<Property>();
-	private List<Property> parentProperties;
+	private volatile List<Property> parentProperties;
+	private transient volatile List<Type> dependencies;
 
 	private List<String> values;
 
@@ -35,11 +39,20 @@ public class ComplexType extends Type {
 		}
 	}
 
+	public ComplexType(String name, String doc, TypeFormat typeFormat,
+			List<Property> properties, List<String> values) {
+		super(name, doc);
+		this.typeFormat = typeFormat;
+		this.properties = properties;
+		this.values = values;
+	}
+
 	public TypeRef getExtends() {
 		return extendsProp;
 	}
 
 	public void setExtends(TypeRef extendsProp) {
+		this.dependencies = null;
 		this.extendsProp = extendsProp;
 	}
 
@@ -56,6 +69,7 @@ public class ComplexType extends Type {
 	}
 
 	public void setProperties(List<Property> properties) {
+		this.dependencies = null;
 		this.properties = properties;
 	}
 
@@ -71,12 +85,47 @@ public class ComplexType extends Type {
 	}
 
 	private void resolveParentProperties() {
-		this.parentProperties = new ArrayList<Property>();
+		// Templates can be rendered concurrently, so the list is only
+		// published when it is complete
+		List<Property> properties = new ArrayList<Property>();
 		if (this.extendsProp != null) {
 			ComplexType complexType = (ComplexType) extendsProp.getType();
-			this.parentProperties.addAll(complexType.getParentProperties());
-			this.parentProperties.addAll(complexType.getProperties());
+			properties.addAll(complexType.getParentProperties());
+			properties.addAll(complexType.getProperties());
+		}
+		this.parentProperties = properties;
+	}
+
+	/**
+	 * @return the parent and the remote classes and complex types of the
+	 *         properties. It is computed once and recomputed only when the
+	 *         properties change.
+	 */
+	@Override
+	public List<Type> getDependencies() {
+		List<Type> dependencies = this.dependencies;
+		if (dependencies == null) {
+			List<Type> types = new ArrayList<Type>();
+			addDependency(types, extendsProp);
+			if (properties != null) {
+				for (Property property : properties) {
+					addDependency(types, property.getType());
+				}
+			}
+
+			Map<Type, Boolean> added = new IdentityHashMap<Type, Boolean>();
+			added.put(this, true);
+			dependencies = new ArrayList<Type>();
+			for (Type type : types) {
+				if (added.put(type, true) == null) {
+					dependencies.add(type);
+				}
+			}
+
+			dependencies = Collections.unmodifiableList(dependencies);
+			this.dependencies = dependencies;
 		}
+		return dependencies;
 	}
 
 	public void setValues(List<String> values) {
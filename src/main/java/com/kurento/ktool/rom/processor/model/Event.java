@@ -12,7 +12,7 @@ public class Event extends Type {
 	@SerializedName("extends")
 	private TypeRef extendsProp;
 
-	private List<Property> parentProperties;
+	private volatile List<Property> parentProperties;
 
 	public Event(String name, String doc, List<Property> properties) {
 		super(name, doc);
@@ -96,12 +96,15 @@ public class Event extends Type {
 	}
 
 	private void resolveParentProperties() {
-		this.parentProperties = new ArrayList<Property>();
+		// Templates can be rendered concurrently, so the list is only
+		// published when it is complete
+		List<Property> properties = new ArrayList<Property>();
 		if (this.extendsProp != null) {
 			Event event = (Event) extendsProp.getType();
-			this.parentProperties.addAll(event.getParentProperties());
-			this.parentProperties.addAll(event.getProperties());
+			properties.addAll(event.getParentProperties());
+			properties.addAll(event.getProperties());
 		}
+		this.parentProperties = properties;
 	}
 
 }
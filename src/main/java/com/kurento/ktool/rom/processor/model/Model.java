@@ -2,7 +2,9 @@ package com.kurento.ktool.rom.processor.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,7 +48,11 @@ public class Model {
 	private transient Map<String, Type> types;
 
 	private transient ResolutionState resolutionState = ResolutionState.NO_RESOLVED;
-	private transient Map<String, Type> allTypes;
+	private transient TypeScope typeScope;
+	private transient Collection<Import> allImports;
+	private transient List<Model> dependencyModels;
+	private transient boolean methodsExpanded;
+	private transient ModelLinker linker;
 
 	public Model() {
 		this.remoteClasses = new ArrayList<>();
@@ -161,6 +167,10 @@ public class Model {
 		return kurentoVersion;
 	}
 
+	public void setKurentoVersion(String kurentoVersion) {
+		this.kurentoVersion = kurentoVersion;
+	}
+
 	public String getVersion() {
 		return version;
 	}
@@ -185,19 +195,83 @@ public class Model {
 		return repository;
 	}
 
+	public void setRepository(String repository) {
+		this.repository = repository;
+	}
+
 	public Code getCode() {
 		return code;
 	}
 
+	public void setCode(Code code) {
+		this.code = code;
+	}
+
 	public List<Import> getImports() {
 		return imports;
 	}
 
+	public void setImports(List<Import> imports) {
+		this.imports = imports;
+	}
+
+	/**
+	 * @return the imports looked up when the model is resolved, including the
+	 *         implicit import of core that is added to the imports then
+	 */
+	public List<Import> getImportsToResolve() {
+		if (resolutionState != ResolutionState.NO_RESOLVED || linker != null
+				|| "core".equals(this.name)) {
+			return imports;
+		}
+
+		List<Import> importsToResolve = new ArrayList<Import>(imports);
+		importsToResolve.add(new Import("core", kurentoVersion != null ? kurentoVersion
+				: version));
+		return importsToResolve;
+	}
+
+	/**
+	 * Sets the linker used to resolve the type references of the model
+	 * instead of looking up their names. The imports of a model with a linker
+	 * are the ones of a model yet resolved, so the implicit import of core is
+	 * not added again.
+	 */
+	public void setLinker(ModelLinker linker) {
+		this.linker = linker;
+	}
+
+	/**
+	 * @return the imports of the model and, recursively, of the imported
+	 *         models. Once the model is resolved, the same immutable
+	 *         collection is returned.
+	 */
 	public Collection<Import> getAllImports() {
+		if (allImports != null) {
+			return allImports;
+		}
+		return computeAllImports();
+	}
 
+	/**
+	 * @return the models imported directly or indirectly by the model, each
+	 *         one after the models it imports. Once the model is resolved, the
+	 *         same immutable list is returned.
+	 */
+	public List<Model> getDependencyModels() {
+		if (dependencyModels != null) {
+			return dependencyModels;
+		}
+		return computeDependencyModels();
+	}
+
+	private Collection<Import> computeAllImports() {
 		Map<String, Import> allImports = new HashMap<String, Import>();
 		getAllImports(allImports);
-		return allImports.values();
+		// The iteration order of the map is kept, as it is the order in which
+		// templates have always listed the imports
+		return Collections.unmodifiableList(new ArrayList<Import>(allImports
+				.values()));
 	}
 
 	private void getAllImports(Map<String, Import> allImports) {
@@ -209,6 +283,25 @@ public class Model {
 		}
 	}
 
+	private List<Model> computeDependencyModels() {
+		Map<String, Model> models = new LinkedHashMap<String, Model>();
+		for (Import importInfo : imports) {
+			Model model = importInfo.getModel();
+			for (Model dependencyModel : model.getDependencyModels()) {
+				addDependencyModel(models, dependencyModel);
+			}
+			addDependencyModel(models, model);
+		}
+		return Collections.unmodifiableList(new ArrayList<Model>(models
+				.values()));
+	}
+
+	private void addDependencyModel(Map<String, Model> models, Model model) {
+		if (!models.containsKey(model.getName())) {
+			models.put(model.getName(), model);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "Model [remoteClasses=" + remoteClasses + ", types="
@@ -274,7 +367,16 @@ public class Model {
 		}
 
 		resolveImports(modelManager);
-		resolveTypes(modelManager);
+		allImports = computeAllImports();
+		dependencyModels = computeDependencyModels();
+
+		if (linker != null) {
+			indexTypes();
+			linker.link(this);
+			linker = null;
+		} else {
+			resolveTypes(modelManager);
+		}
 		addInfoForGeneration(modelManager);
 
 		log.debug("Model '" + name + "' resolved");
@@ -290,6 +392,14 @@ public class Model {
 	}
 
 	private void resolveTypes(ModelManager modelManager) {
+		indexTypes();
+
+		resolveTypeRefs(remoteClasses);
+		resolveTypeRefs(events);
+		resolveTypeRefs(complexTypes);
+	}
+
+	private void indexTypes() {
 		remoteClassesMap = resolveNamedElements(this.remoteClasses);
 		eventsMap = resolveNamedElements(this.events);
 		complexTypesMap = resolveNamedElements(this.complexTypes);
@@ -303,20 +413,17 @@ public class Model {
 		put(types, INT);
 		put(types, FLOAT);
 
-		allTypes = new HashMap<String, Type>(types);
-
+		List<TypeScope> importScopes = new ArrayList<TypeScope>();
 		for (Import importEntry : this.imports) {
-			allTypes.putAll(importEntry.getModel().getAllTypes());
+			importScopes.add(importEntry.getModel().typeScope);
 		}
 
-		resolveTypeRefs(remoteClasses, allTypes);
-		resolveTypeRefs(events, allTypes);
-		resolveTypeRefs(complexTypes, allTypes);
+		typeScope = new TypeScope(types, importScopes);
 	}
 
 	private void resolveImports(ModelManager modelManager) {
 
-		if (!"core".equals(this.name)) {
+		if (!"core".equals(this.name) && linker == null) {
 			this.imports.add(new Import("core", kurentoVersion));
 		}
 
@@ -340,31 +447,26 @@ public class Model {
 		}
 	}
 
-	private Map<String, ? extends Type> getAllTypes() {
-		return allTypes;
-	}
-
 	private void put(Map<String, ? super Type> types, Type t) {
 		types.put(t.getName(), t);
 	}
 
-	private void resolveTypeRefs(List<? extends ModelElement> modelElements,
-			Map<String, Type> baseTypes) {
+	private void resolveTypeRefs(List<? extends ModelElement> modelElements) {
 		for (ModelElement modelElement : modelElements) {
 			if (modelElement instanceof TypeRef) {
 				TypeRef typeRef = (TypeRef) modelElement;
-				Type baseType = baseTypes.get(typeRef.getName());
+				Type baseType = typeScope.getType(typeRef.getName());
 				if (baseType == null) {
 					throw new KurentoRomProcessorException("The type '"
 							+ typeRef.getName()
 							+ "' is not defined. Used in plugin: " + name
-							+ ".\nThe types are: " + baseTypes.keySet());
+							+ ".\nThe types are: " + typeScope.getTypeNames());
 				} else {
 					typeRef.setType(baseType);
 				}
 
 			} else {
-				resolveTypeRefs(modelElement.getChildren(), baseTypes);
+				resolveTypeRefs(modelElement.getChildren());
 			}
 		}
 	}
@@ -379,7 +481,17 @@ public class Model {
 		return elementsMap;
 	}
 
-	public void expandMethodsWithOpsParams() {
+	public synchronized boolean isMethodsExpanded() {
+		return methodsExpanded;
+	}
+
+	public synchronized void expandMethodsWithOpsParams() {
+		// The same model can be generated for several targets
+		if (methodsExpanded) {
+			return;
+		}
+		methodsExpanded = true;
+
 		for (RemoteClass remoteClass : remoteClassesMap.values()) {
 			remoteClass.expandMethodsWithOpsParams();
 		}
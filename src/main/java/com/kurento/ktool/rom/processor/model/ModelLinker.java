@@ -0,0 +1,16 @@
+package com.kurento.ktool.rom.processor.model;
+
+/**
+ * Links the type references of a model that already knows the types they
+ * point to, as the models loaded from their binary form. Models with a
+ * linker don't look up the names of the referenced types when resolved.
+ */
+public interface ModelLinker {
+
+	/**
+	 * Sets the type of every type reference of the model. It is called when
+	 * the imports of the model have been resolved.
+	 */
+	void link(Model model);
+
+}
@@ -1,7 +1,10 @@
 package com.kurento.ktool.rom.processor.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -14,6 +17,7 @@ public class RemoteClass extends Type {
 	private List<Property> properties;
 	private List<TypeRef> events;
 	private boolean abstractClass;
+	private transient volatile List<Type> dependencies;
 
 	public RemoteClass(String name, String doc, TypeRef extendsProp) {
 		super(name, doc);
@@ -59,10 +63,12 @@ public class RemoteClass extends Type {
 	}
 
 	public void addMethod(Method method) {
+		this.dependencies = null;
 		this.methods.add(method);
 	}
 
 	public void addProperty(Property property) {
+		this.dependencies = null;
 		this.properties.add(property);
 	}
 
@@ -71,10 +77,12 @@ public class RemoteClass extends Type {
 	}
 
 	public void setConstructor(Method constructor) {
+		this.dependencies = null;
 		this.constructor = constructor;
 	}
 
 	public void setProperties(List<Property> properties) {
+		this.dependencies = null;
 		this.properties = properties;
 	}
 
@@ -83,10 +91,12 @@ public class RemoteClass extends Type {
 	}
 
 	public void setExtendsProp(TypeRef extendsProp) {
+		this.dependencies = null;
 		this.extendsProp = extendsProp;
 	}
 
 	public void setMethods(List<Method> methods) {
+		this.dependencies = null;
 		this.methods = methods;
 	}
 
@@ -103,6 +113,64 @@ public class RemoteClass extends Type {
 		}
 	}
 
+	/**
+	 * @return the remote classes and complex types used in the constructor,
+	 *         methods and properties, in order of appearance. It is computed
+	 *         once and recomputed only when the methods or properties change.
+	 */
+	@Override
+	public List<Type> getDependencies() {
+		List<Type> dependencies = this.dependencies;
+		if (dependencies == null) {
+			dependencies = computeDependencies();
+			this.dependencies = dependencies;
+		}
+		return dependencies;
+	}
+
+	private List<Type> computeDependencies() {
+		List<Type> types = new ArrayList<Type>();
+
+		if (constructor != null) {
+			addMethodDependencies(types, constructor);
+		}
+		for (Method method : methods) {
+			addMethodDependencies(types, method);
+		}
+		for (Property property : properties) {
+			addDependency(types, property.getType());
+		}
+
+		// Only the first occurrences of the parent and of the class itself
+		// are left out, as templates expect
+		Type parent = extendsProp != null ? extendsProp.getType() : null;
+		boolean parentSkipped = parent == null;
+		boolean selfSkipped = false;
+
+		Map<Type, Boolean> added = new IdentityHashMap<Type, Boolean>();
+		List<Type> dependencies = new ArrayList<Type>();
+		for (Type type : types) {
+			if (!parentSkipped && type == parent) {
+				parentSkipped = true;
+			} else if (!selfSkipped && type == this) {
+				selfSkipped = true;
+			} else if (added.put(type, true) == null) {
+				dependencies.add(type);
+			}
+		}
+
+		return Collections.unmodifiableList(dependencies);
+	}
+
+	private void addMethodDependencies(List<Type> types, Method method) {
+		for (Param param : method.getParams()) {
+			addDependency(types, param.getType());
+		}
+		if (method.getReturn() != null) {
+			addDependency(types, method.getReturn().getType());
+		}
+	}
+
 	@Override
 	public List<ModelElement> getChildren() {
 		List<ModelElement> children = new ArrayList<ModelElement>();
@@ -191,6 +259,7 @@ public class RemoteClass extends Type {
 			newMethods.addAll(method.expandIfOpsParams());
 		}
 		this.methods.addAll(newMethods);
+		this.dependencies = null;
 	}
 
 }
@@ -1,9 +1,55 @@
 package com.kurento.ktool.rom.processor.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 public abstract class Type extends NamedElement {
 
 	public Type(String name, String doc) {
 		super(name, doc);
 	}
 
+	/**
+	 * @return the remote classes and complex types used by this type, without
+	 *         duplicates
+	 */
+	public List<Type> getDependencies() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return the dependencies of this type and, recursively, the ones of its
+	 *         dependencies, in breadth first order. The type itself is not
+	 *         included.
+	 */
+	public List<Type> getTransitiveDependencies() {
+		Map<Type, Boolean> visited = new IdentityHashMap<Type, Boolean>();
+		visited.put(this, true);
+
+		List<Type> dependencies = new ArrayList<Type>();
+		for (int i = -1; i < dependencies.size(); i++) {
+			Type type = i < 0 ? this : dependencies.get(i);
+			for (Type dependency : type.getDependencies()) {
+				if (!visited.containsKey(dependency)) {
+					visited.put(dependency, true);
+					dependencies.add(dependency);
+				}
+			}
+		}
+
+		return dependencies;
+	}
+
+	static void addDependency(List<Type> dependencies, TypeRef typeRef) {
+		if (typeRef != null) {
+			Type type = typeRef.getType();
+			if (type instanceof RemoteClass || type instanceof ComplexType) {
+				dependencies.add(type);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,73 @@
+package com.kurento.ktool.rom.processor.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The types visible from a model: its own types and the types visible from
+ * its imports. A type visible from an import hides an own type with the same
+ * name, and the types of an import hide the ones of the previous imports.
+ *
+ * Scopes are chained to the scopes of the imports instead of copying their
+ * types, and the result of each lookup is cached.
+ */
+class TypeScope {
+
+	private static final Type NOT_FOUND = new PrimitiveType(null);
+
+	private final Map<String, Type> types;
+	private final List<TypeScope> importScopes;
+	private final ConcurrentHashMap<String, Type> lookups = new ConcurrentHashMap<String, Type>();
+
+	TypeScope(Map<String, Type> types, List<TypeScope> importScopes) {
+		this.types = Collections.unmodifiableMap(types);
+		this.importScopes = importScopes;
+	}
+
+	/**
+	 * @return the type visible with the given name, or null if there is none
+	 */
+	Type getType(String name) {
+
+		Type type = lookups.get(name);
+
+		if (type == null) {
+			type = lookUp(name);
+			lookups.put(name, type != null ? type : NOT_FOUND);
+		}
+
+		return type != NOT_FOUND ? type : null;
+	}
+
+	private Type lookUp(String name) {
+
+		for (int i = importScopes.size() - 1; i >= 0; i--) {
+			Type type = importScopes.get(i).getType(name);
+			if (type != null) {
+				return type;
+			}
+		}
+
+		return types.get(name);
+	}
+
+	/**
+	 * @return the names of the visible types. It is expensive, as all the
+	 *         scopes are flattened, so it is meant for error messages.
+	 */
+	Set<String> getTypeNames() {
+		return toMap().keySet();
+	}
+
+	private Map<String, Type> toMap() {
+		Map<String, Type> allTypes = new HashMap<String, Type>(types);
+		for (TypeScope importScope : importScopes) {
+			allTypes.putAll(importScope.toMap());
+		}
+		return allTypes;
+	}
+}